@@ -0,0 +1,65 @@
+package ex1.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ex1.*;
+
+/**
+ * The bookkeeping of acknowledgements on its own, for growing groups. For
+ * exact acks, received() is populateAckList.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AckListBenchmark {
+	@Param({ "3", "16", "128", "1024" })
+	public int group;
+
+	@Param({ "EXACT", "WATERMARK" })
+	public AckTracker.MODE acks;
+
+	private AckTracker tracker;
+	private int time = 0;
+
+	@Setup
+	public void setup() {
+		List<Integer> processes = new ArrayList<>();
+		for (int pid = 0; pid < group; pid++) {
+			processes.add(pid);
+		}
+		tracker = acks.create(processes);
+	}
+
+	/**
+	 * Start tracking a message and forget it again
+	 */
+	@Benchmark
+	public void received() {
+		Message m = new Message(1, ++time);
+		tracker.received(m);
+		tracker.delivered(m);
+	}
+
+	/**
+	 * A message with an ack from every process, until it can be delivered
+	 */
+	@Benchmark
+	public void acked(Blackhole bh) {
+		int t = time += 2;
+		Message m = new Message(1, t);
+		tracker.received(m);
+		for (int pid = 0; pid < group; pid++) {
+			tracker.acked(new Ack(pid, t + 1, 1, t));
+		}
+		bh.consume(tracker.canDeliver(m));
+		tracker.delivered(m);
+	}
+}
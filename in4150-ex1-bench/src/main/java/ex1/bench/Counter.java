@@ -0,0 +1,17 @@
+package ex1.bench;
+
+import ex1.Message;
+import ex1.Target;
+
+/**
+ * Target that counts the deliveries, so a benchmark can check that it
+ * delivered what it should have
+ */
+public class Counter implements Target {
+	public long count = 0;
+
+	@Override
+	public void deliver(int deliveringPID, Message m) {
+		count++;
+	}
+}
@@ -0,0 +1,111 @@
+package ex1.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ex1.*;
+import ex1.Process;
+
+/**
+ * canDeliver and deliver with a deep queue of undelivered messages, in a
+ * group of 3. Process 2 holds up the queue by not acknowledging the oldest
+ * message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeliverBenchmark {
+	private static final int GROUP = 3;
+
+	@State(Scope.Thread)
+	public static class Backlog {
+		@Param({ "16", "256", "4096" })
+		public int depth;
+
+		@Param({ "EXACT", "WATERMARK" })
+		public AckTracker.MODE acks;
+
+		Process p;
+		final Counter delivered = new Counter();
+		int time;
+
+		/**
+		 * Receive depth messages from process 1 and all acks for them, except
+		 * the one of process 2 for the oldest message
+		 */
+		void fill() {
+			p = Group.process(GROUP, acks);
+			p.setTarget(delivered);
+			delivered.count = 0;
+			for (int t = 1; t <= depth; t++) {
+				p.receive(new Message(1, t));
+			}
+			time = depth + 1;
+			p.receive(new Ack(0, time, 1, 1));
+			p.receive(new Ack(1, time, 1, 1));
+			if (acks == AckTracker.MODE.EXACT) {
+				for (int t = 1; t <= depth; t++) {
+					p.receive(new Ack(0, time, 1, t));
+					p.receive(new Ack(1, time, 1, t));
+					if (t > 1) {
+						p.receive(new Ack(2, time, 1, t));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The queue is filled again before every drain
+	 */
+	public static class Drain extends Backlog {
+		@Setup(Level.Invocation)
+		public void setup() {
+			fill();
+		}
+
+		@TearDown(Level.Invocation)
+		public void check() {
+			if (delivered.count != depth) {
+				throw new IllegalStateException(String.format("%d of %d messages delivered", delivered.count, depth));
+			}
+		}
+	}
+
+	/**
+	 * The queue stays blocked
+	 */
+	public static class Blocked extends Backlog {
+		@Setup(Level.Trial)
+		public void setup() {
+			fill();
+		}
+
+		@TearDown(Level.Trial)
+		public void check() {
+			if (delivered.count != 0) {
+				throw new IllegalStateException(delivered.count + " messages delivered from a blocked queue");
+			}
+		}
+	}
+
+	/**
+	 * The missing ack arrives and the whole queue is delivered
+	 */
+	@Benchmark
+	public void drain(Drain b) {
+		b.p.receive(new Ack(2, b.time, 1, 1));
+	}
+
+	/**
+	 * Another ack arrives and the head of the queue still can't be
+	 * delivered
+	 */
+	@Benchmark
+	public void blocked(Blocked b) {
+		b.p.receive(new Ack(0, ++b.time, 1, b.depth));
+	}
+}
@@ -0,0 +1,25 @@
+package ex1.bench;
+
+import ex1.Sender;
+
+/**
+ * Sender that sends on the calling thread. Only safe with a transport that
+ * doesn't call back into a process, like the memory transport.
+ */
+public class DirectSender extends Sender {
+	public DirectSender(boolean fifo) {
+		// The pool is never used, so it never starts a thread
+		super("bench-sender", 1, 1, fifo);
+	}
+
+	@Override
+	public boolean send(Object destination, Runnable send, int delay) {
+		send.run();
+		return true;
+	}
+
+	@Override
+	public boolean awaitRoom() {
+		return true;
+	}
+}
@@ -0,0 +1,33 @@
+package ex1.bench;
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ex1.AckTracker;
+import ex1.Process;
+
+/**
+ * Makes the process under benchmark: process 0 of a group with processes
+ * 0..size-1, sending to a memory transport.
+ */
+public class Group {
+	private Group() {
+	}
+
+	public static Process process(int size, AckTracker.MODE acks) {
+		Logger.getLogger("Process").setLevel(Level.WARNING);
+		Map<Integer, String> endpoints = new HashMap<>();
+		for (int pid = 0; pid < size; pid++) {
+			endpoints.put(pid, "mem:" + pid);
+		}
+		try {
+			Process p = new Process(0, Collections.unmodifiableMap(endpoints), new MemoryTransport(), new DirectSender(true), acks);
+			p.setRandomDelay(false);
+			return p;
+		} catch (RemoteException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
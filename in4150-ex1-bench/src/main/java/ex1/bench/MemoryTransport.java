@@ -0,0 +1,32 @@
+package ex1.bench;
+
+import java.util.List;
+
+import ex1.Message;
+import ex1.Process;
+import ex1.Transport;
+
+/**
+ * Transport that only counts the messages, so a benchmark measures the
+ * protocol and not the network.
+ */
+public class MemoryTransport implements Transport {
+	private long sent = 0;
+
+	@Override
+	public void start(Process p) {
+	}
+
+	@Override
+	public void send(String endpoint, List<Message> ms) {
+		sent += ms.size();
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	public long getSent() {
+		return sent;
+	}
+}
@@ -0,0 +1,74 @@
+package ex1.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ex1.*;
+import ex1.Process;
+
+/**
+ * Process.receive for data messages and acks. Every operation is one round:
+ * a data message from process 1 and an ack for it from every process, after
+ * which it is delivered. The messages are made in the round, like RMI or the
+ * socket transport would make them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReceiveBenchmark {
+	@Param({ "3", "16", "128" })
+	public int group;
+
+	@Param({ "EXACT", "WATERMARK" })
+	public AckTracker.MODE acks;
+
+	private Process p;
+	private final Counter delivered = new Counter();
+	private int time = 0;
+
+	@Setup
+	public void setup() {
+		p = Group.process(group, acks);
+		p.setTarget(delivered);
+	}
+
+	/**
+	 * The data message first, then the acks
+	 */
+	@Benchmark
+	public void dataThenAcks() {
+		int t = time += 2;
+		p.receive(new Message(1, t));
+		for (int pid = 0; pid < group; pid++) {
+			p.receive(new Ack(pid, t + 1, 1, t));
+		}
+	}
+
+	/**
+	 * The acks first, then the data message, so the acks have to be kept for
+	 * a message that hasn't arrived yet
+	 */
+	@Benchmark
+	public void acksThenData() {
+		int t = time += 2;
+		for (int pid = 0; pid < group; pid++) {
+			if (pid != 1) {
+				p.receive(new Ack(pid, t + 1, 1, t));
+			}
+		}
+		p.receive(new Message(1, t));
+		// Process 1 acks its own message after sending it
+		p.receive(new Ack(1, t + 1, 1, t));
+	}
+
+	@TearDown
+	public void check() {
+		if (delivered.count != time / 2) {
+			throw new IllegalStateException(String.format("%d of %d messages delivered", delivered.count, time / 2));
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package ex1.bench;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import ex1.*;
+
+/**
+ * What it costs to turn a message into bytes and back: with Java
+ * serialization, like RMI, and with the binary frames of the socket
+ * transport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+	public enum TYPE {
+		MESSAGE, ACK, VECTOR_ACK
+	}
+
+	@Param({ "MESSAGE", "ACK", "VECTOR_ACK" })
+	public TYPE type;
+
+	private Message m;
+	private byte[] serialized;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+	@Setup
+	public void setup() throws IOException {
+		switch (type) {
+		case MESSAGE:
+			m = new Message(1, 42);
+			break;
+		case ACK:
+			m = new Ack(2, 43, 1, 42);
+			break;
+		case VECTOR_ACK:
+			// 8 held back acks piggybacked on a new message
+			List<Message> acked = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				acked.add(new Message(1, 34 + t));
+			}
+			m = new VectorAck(2, 43, acked, new Message(2, 43));
+			break;
+		}
+		serialized = serialize();
+	}
+
+	@Benchmark
+	public byte[] serialize() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(m);
+		}
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public Object deserialize() throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public int encode() throws IOException {
+		buffer.clear();
+		MessageCodec.writeFrame(buffer, m);
+		return buffer.position();
+	}
+
+	@Benchmark
+	public Message encodeDecode() throws IOException {
+		buffer.clear();
+		MessageCodec.writeFrame(buffer, m);
+		buffer.flip();
+		return MessageCodec.readFrame(buffer);
+	}
+}
@@ -0,0 +1,73 @@
+package ex1;
+
+import java.util.Collection;
+
+/**
+ * Keeps track of the acknowledgements a process has received, to decide when
+ * the message at the top of the queue can be delivered.
+ */
+public interface AckTracker {
+	/**
+	 * A message was received, all processes have to acknowledge it
+	 */
+	public void received(Message m);
+
+	/**
+	 * An acknowledgement was received
+	 */
+	public void acked(Ack a);
+
+	/**
+	 * An acknowledgement sent by sender_process at sender_time was received
+	 * for the message with the given id
+	 */
+	public void acked(int sender_process, int sender_time, long acked);
+
+	/**
+	 * @return true if m has been acknowledged by all processes
+	 */
+	public boolean canDeliver(Message m);
+
+	/**
+	 * @return true if the message with the given id has been acknowledged by
+	 *         all processes
+	 */
+	public boolean canDeliver(long id);
+
+	/**
+	 * m was delivered, forget about it
+	 */
+	public void delivered(Message m);
+
+	/**
+	 * A process was taken out of the group, no message waits for its
+	 * acknowledgement anymore
+	 */
+	public void removed(int process);
+
+	/**
+	 * @return the number of entries kept
+	 */
+	public int size();
+
+	public enum MODE {
+		/**
+		 * A set of remaining acks for every message
+		 */
+		EXACT,
+		/**
+		 * The highest clock received from every process, only correct over FIFO
+		 * channels
+		 */
+		WATERMARK;
+
+		public AckTracker create(Collection<Integer> processes) {
+			switch (this) {
+			case WATERMARK:
+				return new WatermarkAckTracker(processes);
+			default:
+				return new ExactAckTracker(processes);
+			}
+		}
+	}
+}
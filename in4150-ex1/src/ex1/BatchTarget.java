@@ -0,0 +1,13 @@
+package ex1;
+
+import java.util.List;
+
+/**
+ * Target that can take several messages that are delivered in a row at once
+ */
+public interface BatchTarget extends Target {
+	/**
+	 * Deliver messages, in order
+	 */
+	public void deliver(int deliveringPID, List<Message> ms);
+}
@@ -0,0 +1,70 @@
+package ex1;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of direct buffers of one size. Direct buffers are expensive to
+ * allocate but can be written to a channel without copying, so they are
+ * reused instead of left to the garbage collector.
+ */
+public class BufferPool {
+	private final int buffer_size;
+	private final int max_pooled;
+	private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+	/**
+	 * Number of buffers in the pool, ConcurrentLinkedQueue.size() is O(n)
+	 */
+	private final AtomicInteger pooled = new AtomicInteger(0);
+	private final AtomicInteger allocated = new AtomicInteger(0);
+
+	/**
+	 * @param buffer_size
+	 *            size of the buffers in bytes
+	 * @param max_pooled
+	 *            maximum number of free buffers that are kept
+	 */
+	public BufferPool(int buffer_size, int max_pooled) {
+		this.buffer_size = buffer_size;
+		this.max_pooled = max_pooled;
+	}
+
+	/**
+	 * @return a cleared buffer
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer b = free.poll();
+		if (b == null) {
+			allocated.incrementAndGet();
+			return ByteBuffer.allocateDirect(buffer_size);
+		}
+		pooled.decrementAndGet();
+		b.clear();
+		return b;
+	}
+
+	/**
+	 * Give a buffer back, it must not be used anymore after this. Buffers that
+	 * did not come from the pool are left to the garbage collector.
+	 */
+	public void release(ByteBuffer b) {
+		if (!b.isDirect() || b.capacity() != buffer_size) {
+			return;
+		}
+		if (pooled.incrementAndGet() <= max_pooled) {
+			free.add(b);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+
+	public int getBufferSize() {
+		return buffer_size;
+	}
+
+	public String toString() {
+		return String.format("%d buffers of %d bytes allocated, %d free", allocated.get(), buffer_size, pooled.get());
+	}
+}
@@ -0,0 +1,121 @@
+package ex1;
+
+import java.util.*;
+
+/**
+ * Causal ordering with vector timestamps. A message is delivered once every
+ * message that was delivered by its sender before it was broadcast has been
+ * delivered here, and the earlier messages of the sender. Messages that don't
+ * depend on each other are delivered in the order they arrive, there are no
+ * acknowledgements and a message is only held back for the messages it
+ * depends on. This takes N messages per broadcast.
+ */
+public class CausalOrdering implements Ordering {
+	private final Process p;
+
+	/**
+	 * process id -> position in the vectors
+	 */
+	private Map<Integer, Integer> index;
+	/**
+	 * Number of delivered messages of every process
+	 */
+	private int[] delivered;
+	/**
+	 * Number of messages this process broadcast
+	 */
+	private int sent = 0;
+	/**
+	 * Message id of sender and its number among the messages of the sender
+	 * -> received message that can't be delivered yet
+	 */
+	private final Map<Long, Stamped> holdback = new HashMap<>();
+
+	public CausalOrdering(Process p) {
+		this.p = p;
+	}
+
+	@Override
+	public synchronized void start() {
+		if (index != null) {
+			return;
+		}
+		List<Integer> pids = new ArrayList<>(p.getProcessIds());
+		Collections.sort(pids);
+		index = new HashMap<>();
+		for (int pid : pids) {
+			index.put(pid, index.size());
+		}
+		delivered = new int[pids.size()];
+	}
+
+	@Override
+	public synchronized void broadcast(Message m) {
+		start();
+		int[] vector = delivered.clone();
+		vector[index.get(p.process_id)] = ++sent;
+		p.send(new Stamped(p.process_id, m.sender_time, vector, m));
+	}
+
+	@Override
+	public synchronized void receive(Message m) {
+		if (!(m instanceof Stamped)) {
+			p.logerr("Received " + m.toString() + " without a vector timestamp");
+			return;
+		}
+		start();
+		Stamped s = (Stamped) m;
+		Integer j = index.get(s.sender_process);
+		if (j == null || s.vector.length != delivered.length) {
+			p.logerr("Received " + s.toString() + " from outside the group");
+			return;
+		}
+		long key = Message.id(j, s.vector[j]);
+		if (s.vector[j] <= delivered[j] || holdback.containsKey(key)) {
+			p.logwarn("Received " + s.toString() + " twice");
+			return;
+		}
+		holdback.put(key, s);
+		List<Message> run = new ArrayList<>();
+		if (deliverable(s, j)) {
+			// Delivering it can make others deliverable, look again
+			// until nothing changes
+			boolean progress = true;
+			while (progress) {
+				progress = false;
+				for (int k = 0; k < delivered.length; k++) {
+					Stamped next = holdback.get(Message.id(k, delivered[k] + 1));
+					if (next != null && deliverable(next, k)) {
+						holdback.remove(Message.id(k, delivered[k] + 1));
+						delivered[k]++;
+						run.add(next.message);
+						progress = true;
+					}
+				}
+			}
+		}
+		if (!run.isEmpty()) {
+			p.deliverToTarget(run);
+		}
+	}
+
+	/**
+	 * @return true if s from the process at position j can be delivered
+	 */
+	private boolean deliverable(Stamped s, int j) {
+		if (s.vector[j] != delivered[j] + 1) {
+			return false;
+		}
+		for (int k = 0; k < delivered.length; k++) {
+			if (k != j && s.vector[k] > delivered[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public synchronized int pending() {
+		return holdback.size();
+	}
+}
@@ -0,0 +1,554 @@
+package ex1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of what a process received, acknowledged, sent and
+ * delivered, in a memory mapped file. A restarted process replays it to get
+ * its clock and its queue of undelivered messages back.
+ *
+ * Records are written into the mapping, so they survive the process crashing
+ * as soon as they are appended. Surviving the machine crashing needs the
+ * mapping to be forced to disk, which commit() waits for. One flusher thread
+ * forces for everyone that is waiting, so concurrent commits share one
+ * fsync. Deliveries are committed before they are handed to the target.
+ *
+ * The file is mapped in regions of REGION bytes, a record never spans two.
+ * A zero byte where a record should start is the end of the log. Received and
+ * sent Payloads are logged with their data, so a restarted process gets it
+ * back. Received NullMessages have a record of their own, so they are not
+ * replayed as messages for the target.
+ */
+public class DeliveryLog {
+	private static final int REGION = 16 * 1024 * 1024;
+
+	/**
+	 * Record types, followed by their fields
+	 */
+	private static final byte END = 0;
+	/** long id */
+	private static final byte RECEIVED = 1;
+	/** int sender, int sender time, long acked id */
+	private static final byte ACKED = 2;
+	/** long id */
+	private static final byte DELIVERED = 3;
+	/** int clock */
+	private static final byte CLOCK = 4;
+	/** The rest of the region is unused */
+	private static final byte NEXT_REGION = 5;
+	/** long id of a message broadcast by the process itself */
+	private static final byte SENT = 6;
+	/** long id, int length, the data of a received Payload */
+	private static final byte RECEIVED_DATA = 7;
+	/** long id, int length, the data of a Payload broadcast by the process */
+	private static final byte SENT_DATA = 8;
+	/** long id of a received NullMessage */
+	private static final byte RECEIVED_NULL = 9;
+	private static final int MAX_RECORD = 17;
+	/**
+	 * Size of a data record without the data
+	 */
+	private static final int DATA_HEADER = 13;
+
+	/**
+	 * Gets the records of the log in the order they were written
+	 */
+	public interface Replay {
+		/**
+		 * @param data
+		 *            the data of the Payload, or null for a plain message
+		 * @param null_message
+		 *            whether it was a NullMessage
+		 */
+		public void received(long id, byte[] data, boolean null_message);
+
+		/**
+		 * @param data
+		 *            the data of the Payload, or null for a plain message
+		 */
+		public void sent(long id, byte[] data);
+
+		public void acked(int sender_process, int sender_time, long acked);
+
+		public void delivered(long id);
+
+		public void clock(int clock);
+	}
+
+	private final File file;
+	/**
+	 * Time in ms the flusher waits for more commits before it forces, 0 to
+	 * force right away
+	 */
+	private final int sync_interval;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	/**
+	 * Mapping of the region being appended to, and its offset in the file
+	 */
+	private MappedByteBuffer region;
+	private long base;
+
+	/**
+	 * Number of bytes appended, asked to be forced and forced since the log
+	 * was opened. They keep counting when the log is truncated. Locked on
+	 * this.
+	 */
+	private long appended = 0;
+	private long synced = 0;
+	private long requested = 0;
+	private final Thread flusher;
+	private volatile boolean running = true;
+
+	private long records = 0;
+	private long syncs = 0;
+	private long commits = 0;
+
+	/**
+	 * Open or create a log
+	 *
+	 * @param sync_interval
+	 *            time in ms commits are gathered before forcing them to disk
+	 *            together, 0 to force as soon as one is waiting
+	 */
+	public DeliveryLog(File file, int sync_interval) throws IOException {
+		this.file = file;
+		this.sync_interval = sync_interval;
+		open();
+		this.flusher = new Thread("log-" + file.getName()) {
+			public void run() {
+				flush();
+			}
+		};
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Map the file and find the end of the log
+	 */
+	private void open() throws IOException {
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		base = 0;
+		region = map(0);
+		while (true) {
+			byte type = region.get(region.position());
+			if (type == END) {
+				break;
+			}
+			if (type == NEXT_REGION) {
+				nextRegion();
+				continue;
+			}
+			region.position(region.position() + size(region, region.position()));
+		}
+		// Anything that was waiting has been forced by now
+		synced = requested = appended;
+	}
+
+	private MappedByteBuffer map(long offset) throws IOException {
+		// Mapping past the end grows the file, the new part is zeros
+		return channel.map(FileChannel.MapMode.READ_WRITE, offset, REGION);
+	}
+
+	private void nextRegion() throws IOException {
+		region.force();
+		base += REGION;
+		region = map(base);
+	}
+
+	/**
+	 * @return the size of the record at pos
+	 */
+	private static int size(MappedByteBuffer r, int pos) {
+		byte type = r.get(pos);
+		switch (type) {
+		case RECEIVED:
+		case RECEIVED_NULL:
+		case DELIVERED:
+		case SENT:
+			return 9;
+		case RECEIVED_DATA:
+		case SENT_DATA:
+			return DATA_HEADER + r.getInt(pos + 9);
+		case ACKED:
+			return 17;
+		case CLOCK:
+			return 5;
+		default:
+			throw new IllegalStateException("Corrupt delivery log, record type " + type);
+		}
+	}
+
+	/**
+	 * Call replay for every record in the log, in order
+	 */
+	public synchronized void replay(Replay replay) throws IOException {
+		long offset = 0;
+		long end = end();
+		MappedByteBuffer r = offset == base ? region : map(offset);
+		int pos = 0;
+		while (offset + pos < end) {
+			byte type = r.get(pos);
+			switch (type) {
+			case RECEIVED:
+				replay.received(r.getLong(pos + 1), null, false);
+				break;
+			case RECEIVED_NULL:
+				replay.received(r.getLong(pos + 1), null, true);
+				break;
+			case RECEIVED_DATA:
+				replay.received(r.getLong(pos + 1), data(r, pos), false);
+				break;
+			case ACKED:
+				replay.acked(r.getInt(pos + 1), r.getInt(pos + 5), r.getLong(pos + 9));
+				break;
+			case DELIVERED:
+				replay.delivered(r.getLong(pos + 1));
+				break;
+			case SENT:
+				replay.sent(r.getLong(pos + 1), null);
+				break;
+			case SENT_DATA:
+				replay.sent(r.getLong(pos + 1), data(r, pos));
+				break;
+			case CLOCK:
+				replay.clock(r.getInt(pos + 1));
+				break;
+			case NEXT_REGION:
+				offset += REGION;
+				r = offset == base ? region : map(offset);
+				pos = 0;
+				continue;
+			}
+			pos += size(r, pos);
+		}
+	}
+
+	/**
+	 * @return the data of the data record at pos
+	 */
+	private static byte[] data(MappedByteBuffer r, int pos) {
+		byte[] data = new byte[r.getInt(pos + 9)];
+		ByteBuffer b = r.duplicate();
+		b.position(pos + DATA_HEADER);
+		b.get(data);
+		return data;
+	}
+
+	/**
+	 * @return the message with id, a Payload if it has data
+	 */
+	static Message message(long id, byte[] data) {
+		return message(id, data, false);
+	}
+
+	/**
+	 * @return the message with id, a Payload if it has data or a NullMessage
+	 *         if null_message
+	 */
+	static Message message(long id, byte[] data, boolean null_message) {
+		if (null_message) {
+			return new NullMessage(Message.process(id), Message.time(id));
+		}
+		if (data == null) {
+			return new Message(Message.process(id), Message.time(id));
+		}
+		return new Payload(Message.process(id), Message.time(id), data);
+	}
+
+	public void received(Message m) {
+		if (m instanceof Payload) {
+			data(RECEIVED_DATA, m.getId(), ((Payload) m).data);
+			return;
+		}
+		synchronized (this) {
+			room(MAX_RECORD);
+			region.put(m instanceof NullMessage ? RECEIVED_NULL : RECEIVED).putLong(m.getId());
+			appended(9);
+		}
+	}
+
+	public void acked(int sender_process, int sender_time, long acked) {
+		synchronized (this) {
+			room(MAX_RECORD);
+			region.put(ACKED).putInt(sender_process).putInt(sender_time).putLong(acked);
+			appended(17);
+		}
+	}
+
+	public void delivered(Message m) {
+		synchronized (this) {
+			room(MAX_RECORD);
+			region.put(DELIVERED).putLong(m.getId());
+			appended(9);
+		}
+	}
+
+	/**
+	 * The process broadcast a message of its own
+	 */
+	public void sent(Message m) {
+		if (m instanceof Payload) {
+			data(SENT_DATA, m.getId(), ((Payload) m).data);
+			return;
+		}
+		synchronized (this) {
+			room(MAX_RECORD);
+			region.put(SENT).putLong(m.getId());
+			appended(9);
+		}
+	}
+
+	/**
+	 * The process used its clock up to clock
+	 */
+	public void clock(int clock) {
+		synchronized (this) {
+			room(MAX_RECORD);
+			region.put(CLOCK).putInt(clock);
+			appended(5);
+		}
+	}
+
+	private void data(byte type, long id, byte[] data) {
+		int size = DATA_HEADER + data.length;
+		if (size > REGION - 1) {
+			throw new IllegalArgumentException("Data of " + data.length + " bytes does not fit in the delivery log");
+		}
+		synchronized (this) {
+			room(size);
+			region.put(type).putLong(id).putInt(data.length).put(data);
+			appended(size);
+		}
+	}
+
+	/**
+	 * Move to the next region if a record of size bytes might not fit in
+	 * this one
+	 */
+	private void room(int size) {
+		if (region.remaining() > size) {
+			return;
+		}
+		region.put(NEXT_REGION);
+		try {
+			nextRegion();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not grow delivery log " + file, e);
+		}
+	}
+
+	private void appended(int size) {
+		appended += size;
+		records++;
+	}
+
+	/**
+	 * @return the position in the file after the last record
+	 */
+	private long end() {
+		return base + region.position();
+	}
+
+	/**
+	 * Wait until everything appended so far has been forced to disk
+	 */
+	public void commit() {
+		synchronized (this) {
+			commits++;
+			long upto = appended;
+			if (upto <= synced) {
+				return;
+			}
+			if (requested < upto) {
+				requested = upto;
+				notifyAll();
+			}
+			while (synced < upto && running) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The flusher, forces what has been committed, once for all waiting
+	 * commits
+	 */
+	private void flush() {
+		while (running) {
+			MappedByteBuffer r;
+			long upto;
+			synchronized (this) {
+				while (running && requested <= synced) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+					}
+				}
+				if (!running) {
+					return;
+				}
+			}
+			if (sync_interval > 0) {
+				// Let more commits come in
+				try {
+					Thread.sleep(sync_interval);
+				} catch (InterruptedException e) {
+				}
+			}
+			synchronized (this) {
+				r = region;
+				upto = appended;
+			}
+			// Earlier regions were forced when they were left. Not under the
+			// lock, appending can go on while the disk works.
+			r.force();
+			synchronized (this) {
+				synced = Math.max(synced, upto);
+				syncs++;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Drop everything about the messages up to and including upto, in the
+	 * order of delivery. Only allowed once all processes have delivered upto,
+	 * so none of it will be needed again. The records that are left are
+	 * copied to a new file that replaces the log.
+	 */
+	public synchronized void truncate(Message upto) throws IOException {
+		final List<long[]> kept = new ArrayList<>();
+		// Id -> data of the kept Payloads
+		final Map<Long, byte[]> kept_data = new HashMap<>();
+		final int[] clock = { 0 };
+		final Message point = upto;
+		replay(new Replay() {
+			public void received(long id, byte[] data, boolean null_message) {
+				if (Message.after(id, point)) {
+					kept.add(new long[] { null_message ? RECEIVED_NULL : RECEIVED, id });
+					if (data != null) {
+						kept_data.put(id, data);
+					}
+				}
+				clock(Message.time(id));
+			}
+
+			public void sent(long id, byte[] data) {
+				if (Message.after(id, point)) {
+					kept.add(new long[] { SENT, id });
+					if (data != null) {
+						kept_data.put(id, data);
+					}
+				}
+				clock(Message.time(id));
+			}
+
+			public void acked(int sender_process, int sender_time, long acked) {
+				if (Message.after(acked, point)) {
+					kept.add(new long[] { ACKED, Message.id(sender_process, sender_time), acked });
+				}
+				clock(sender_time);
+			}
+
+			public void delivered(long id) {
+				if (Message.after(id, point)) {
+					kept.add(new long[] { DELIVERED, id });
+				}
+			}
+
+			public void clock(int c) {
+				clock[0] = Math.max(clock[0], c);
+			}
+		});
+		File tmp = new File(file.getPath() + ".tmp");
+		tmp.delete();
+		// Write the new log with the same code as the old one
+		DeliveryLog compacted = new DeliveryLog(tmp, 0);
+		compacted.clock(clock[0]);
+		for (long[] k : kept) {
+			switch ((int) k[0]) {
+			case RECEIVED:
+			case RECEIVED_NULL:
+				compacted.received(message(k[1], kept_data.get(k[1]), k[0] == RECEIVED_NULL));
+				break;
+			case ACKED:
+				compacted.acked(Message.process(k[1]), Message.time(k[1]), k[2]);
+				break;
+			case DELIVERED:
+				compacted.delivered(new Message(Message.process(k[1]), Message.time(k[1])));
+				break;
+			case SENT:
+				compacted.sent(message(k[1], kept_data.get(k[1])));
+				break;
+			}
+		}
+		compacted.commit();
+		compacted.close();
+		region.force();
+		channel.close();
+		raf.close();
+		// A file that is still mapped can't be replaced on every system,
+		// the mapping goes once nothing refers to it
+		region = null;
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// Not replaced, keep using the old log
+			tmp.delete();
+			open();
+			throw new IOException("Could not replace " + file + " with the truncated log", e);
+		}
+		open();
+		notifyAll();
+	}
+
+	/**
+	 * Force the log to disk and close it
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+		}
+		try {
+			flusher.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			region.force();
+			channel.close();
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the size of the log in bytes
+	 */
+	public synchronized long size() {
+		return end();
+	}
+
+	public synchronized String toString() {
+		return String.format("%s, %d bytes, %d records, %d commits in %d syncs", file.getPath(), end(), records, commits, syncs);
+	}
+}
@@ -0,0 +1,121 @@
+package ex1;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands delivered messages to the target on a dedicated thread, so a slow
+ * target doesn't hold up the process. Runs of messages are handed over in
+ * order through a bounded queue. When it is full the delivering thread waits,
+ * how often and how long is kept track of.
+ */
+public class DeliveryPipeline {
+	private final int process_id;
+	private final BlockingQueue<List<Message>> runs;
+	private final Thread consumer;
+	private volatile Target target;
+	private volatile boolean running = true;
+
+	private final AtomicLong delivered = new AtomicLong(0);
+	/**
+	 * Number of times and total time in ns the delivering thread waited for
+	 * room
+	 */
+	private final AtomicLong waits = new AtomicLong(0);
+	private final AtomicLong wait_time = new AtomicLong(0);
+	private final AtomicInteger max_depth = new AtomicInteger(0);
+
+	/**
+	 * @param capacity
+	 *            maximum number of runs waiting for the target
+	 */
+	public DeliveryPipeline(int process_id, int capacity) {
+		this.process_id = process_id;
+		this.runs = new ArrayBlockingQueue<>(capacity);
+		this.consumer = new Thread("P_" + process_id + "-delivery") {
+			public void run() {
+				consume();
+			}
+		};
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	public void setTarget(Target t) {
+		this.target = t;
+	}
+
+	/**
+	 * Hand over a run of messages, waits if the queue is full
+	 */
+	public void put(List<Message> run) {
+		if (!runs.offer(run)) {
+			waits.incrementAndGet();
+			long start = System.nanoTime();
+			try {
+				runs.put(run);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} finally {
+				wait_time.addAndGet(System.nanoTime() - start);
+			}
+		}
+		int depth = runs.size();
+		int max;
+		while (depth > (max = max_depth.get()) && !max_depth.compareAndSet(max, depth)) {
+		}
+	}
+
+	private void consume() {
+		while (running || !runs.isEmpty()) {
+			List<Message> run;
+			try {
+				run = runs.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (run == null) {
+				continue;
+			}
+			Target t = target;
+			if (t instanceof BatchTarget) {
+				((BatchTarget) t).deliver(process_id, run);
+			} else if (t != null) {
+				for (Message m : run) {
+					t.deliver(process_id, m);
+				}
+			}
+			delivered.addAndGet(run.size());
+		}
+	}
+
+	/**
+	 * Stop after the waiting runs have been handed to the target
+	 *
+	 * @param timeout
+	 *            time in ms to wait for the waiting runs
+	 */
+	public void stop(int timeout) {
+		running = false;
+		try {
+			consumer.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of runs waiting for the target
+	 */
+	public int getDepth() {
+		return runs.size();
+	}
+
+	public String toString() {
+		return String.format("%d delivered, %d runs waiting (max %d), waited for room %d times (%.1f ms)", delivered.get(), runs.size(),
+				max_depth.get(), waits.get(), wait_time.get() / 1e6);
+	}
+}
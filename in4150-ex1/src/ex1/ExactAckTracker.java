@@ -0,0 +1,233 @@
+package ex1;
+
+import java.util.*;
+
+/**
+ * Tracks for every message exactly which processes have yet to acknowledge
+ * it. Memory is O(messages * processes).
+ *
+ * Messages are kept by id in a primitive map, the processes that still have
+ * to acknowledge one are a row of bits in one big array, with the number of
+ * them in front. Rows of delivered messages are reused, so once the queue has
+ * reached its size receiving messages and acknowledgements allocates nothing.
+ */
+public class ExactAckTracker implements AckTracker {
+	/**
+	 * All processes, can still grow while the group is being started
+	 */
+	private final Collection<Integer> processes;
+	/**
+	 * process id -> bit in the rows
+	 */
+	private final LongMap index = new LongMap();
+	private int columns = 0;
+	/**
+	 * Bits of the processes in the group, the others were removed. New rows
+	 * start as a copy.
+	 */
+	private long[] live = new long[1];
+	private int nlive = 0;
+	/**
+	 * bit -> process id
+	 */
+	private int[] pids = new int[0];
+
+	/**
+	 * For every received message, the row with the processes that have yet
+	 * to acknowledge it
+	 */
+	private final LongMap ackList = new LongMap();
+	/**
+	 * Rows of a count and the bits of the processes that still have to
+	 * acknowledge, words per row
+	 */
+	private long[] rows = new long[0];
+	private int words = 1;
+	private int used = 0;
+	/**
+	 * Rows that are free again
+	 */
+	private int[] free = new int[16];
+	private int nfree = 0;
+
+	public ExactAckTracker(Collection<Integer> processes) {
+		this.processes = processes;
+		addProcesses();
+	}
+
+	@Override
+	public void received(Message m) {
+		addProcesses();
+		populateAckList(m.getId());
+	}
+
+	@Override
+	public void acked(Ack a) {
+		acked(a.sender_process, a.sender_time, a.getAckedId());
+	}
+
+	@Override
+	public void acked(int sender_process, int sender_time, long acked) {
+		addProcesses();
+		// The ack can arrive before the message itself
+		int offset = populateAckList(acked) * (words + 1);
+		int bit = (int) index.get(sender_process, -1);
+		if (bit < 0) {
+			return;
+		}
+		// We've gotten an ack from this process, remove it from the row
+		long b = 1L << bit;
+		int w = offset + 1 + (bit >>> 6);
+		if ((rows[w] & b) != 0) {
+			rows[w] &= ~b;
+			rows[offset]--;
+		}
+	}
+
+	@Override
+	public boolean canDeliver(Message m) {
+		return canDeliver(m.getId());
+	}
+
+	@Override
+	public boolean canDeliver(long id) {
+		int row = (int) ackList.get(id, -1);
+		return row >= 0 && rows[row * (words + 1)] == 0;
+	}
+
+	@Override
+	public void delivered(Message m) {
+		int row = (int) ackList.remove(m.getId(), -1);
+		if (row < 0) {
+			return;
+		}
+		if (nfree == free.length) {
+			free = Arrays.copyOf(free, 2 * free.length);
+		}
+		free[nfree++] = row;
+	}
+
+	@Override
+	public int size() {
+		return ackList.size();
+	}
+
+	/**
+	 * Make the initial row of remaining acknowledgements for a message
+	 * @return the row of the message
+	 */
+	private int populateAckList(long id) {
+		int row = (int) ackList.get(id, -1);
+		if (row >= 0) {
+			return row;
+		}
+		if (nfree > 0) {
+			row = free[--nfree];
+		} else {
+			row = used++;
+			if (used * (words + 1) > rows.length) {
+				rows = Arrays.copyOf(rows, Math.max(used * (words + 1), 2 * rows.length));
+			}
+		}
+		ackList.put(id, row);
+		// All processes have to acknowledge it
+		int offset = row * (words + 1);
+		rows[offset] = nlive;
+		System.arraycopy(live, 0, rows, offset + 1, words);
+		return row;
+	}
+
+	/**
+	 * Start tracking processes that were added to the group, or taken back
+	 * in after they were removed. Messages that were already received don't
+	 * wait for them.
+	 */
+	private void addProcesses() {
+		if (processes.size() == nlive) {
+			return;
+		}
+		for (int p : processes) {
+			int bit = (int) index.get(p, -1);
+			if (bit < 0) {
+				if (columns == pids.length) {
+					pids = Arrays.copyOf(pids, Math.max(8, 2 * columns));
+				}
+				pids[columns] = p;
+				bit = columns++;
+				index.put(p, bit);
+				if (columns > 64 * words) {
+					widen();
+				}
+			}
+			if ((live[bit >>> 6] & (1L << bit)) == 0) {
+				live[bit >>> 6] |= 1L << bit;
+				nlive++;
+			}
+		}
+	}
+
+	/**
+	 * Make the rows one word wider
+	 */
+	private void widen() {
+		int wider = words + 1;
+		long[] r = new long[Math.max(16, used * (wider + 1))];
+		for (int row = 0; row < used; row++) {
+			System.arraycopy(rows, row * (words + 1), r, row * (wider + 1), words + 1);
+		}
+		rows = r;
+		live = Arrays.copyOf(live, wider);
+		words = wider;
+	}
+
+	@Override
+	public void removed(int process) {
+		final int bit = (int) index.get(process, -1);
+		if (bit < 0 || (live[bit >>> 6] & (1L << bit)) == 0) {
+			return;
+		}
+		live[bit >>> 6] &= ~(1L << bit);
+		nlive--;
+		// Every message waiting for it has its ack now
+		ackList.forEach(new LongMap.Visitor() {
+			public void visit(long id, long row) {
+				int offset = (int) row * (words + 1);
+				int w = offset + 1 + (bit >>> 6);
+				if ((rows[w] & (1L << bit)) != 0) {
+					rows[w] &= ~(1L << bit);
+					rows[offset]--;
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return for every message acknowledgements are kept for, its id and
+	 *         then the processes that acknowledged it. Processes that were
+	 *         added after it was received or removed count as having
+	 *         acknowledged it.
+	 */
+	public List<long[]> acknowledged() {
+		addProcesses();
+		final List<long[]> l = new ArrayList<>(ackList.size());
+		ackList.forEach(new LongMap.Visitor() {
+			public void visit(long id, long row) {
+				int offset = (int) row * (words + 1);
+				long[] a = new long[1 + columns - (int) rows[offset]];
+				a[0] = id;
+				int n = 1;
+				for (int bit = 0; bit < columns; bit++) {
+					if ((rows[offset + 1 + (bit >>> 6)] & (1L << bit)) == 0) {
+						a[n++] = pids[bit];
+					}
+				}
+				l.add(a);
+			}
+		});
+		return l;
+	}
+
+	public String toString() {
+		return String.format("%d messages waiting for acks of %d processes", ackList.size(), nlive);
+	}
+}
@@ -0,0 +1,105 @@
+package ex1;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values, for latencies and queue
+ * depths that are recorded on the hot path.
+ *
+ * Values are counted in log-linear buckets: 16 buckets for every power of
+ * two, so a percentile is off by at most 1/16th. Recording is a few atomic
+ * increments and never allocates.
+ */
+public class Histogram {
+	/**
+	 * log2 of the number of buckets per power of two
+	 */
+	private static final int SUB_BITS = 4;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong(0);
+	private final AtomicLong sum = new AtomicLong(0);
+	private final AtomicLong max = new AtomicLong(0);
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(index(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+		}
+	}
+
+	private static int index(long value) {
+		if (value < SUB) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB - 1));
+	}
+
+	/**
+	 * @return the highest value that falls in a bucket
+	 */
+	private static long highest(int index) {
+		if (index < SUB) {
+			return index;
+		}
+		int shift = (index >> SUB_BITS) - 1;
+		return (((long) (SUB + (index & (SUB - 1))) + 1) << shift) - 1;
+	}
+
+	/**
+	 * @param p
+	 *            fraction of the values, 0.99 for the 99th percentile
+	 * @return the value that fraction p of the recorded values is at or below,
+	 *         0 if nothing was recorded
+	 */
+	public long getPercentile(double p) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(p * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highest(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / (double) n;
+	}
+
+	/**
+	 * Forget all recorded values. Values recorded while resetting can be
+	 * partly kept.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
@@ -0,0 +1,28 @@
+package ex1;
+
+/**
+ * Asks a process to take a process into the group. The peer takes a snapshot
+ * of its state for it.
+ */
+public class Join extends Message {
+	private static final long serialVersionUID = -5083412985522471265L;
+
+	/**
+	 * Endpoint of the joining process
+	 */
+	public final String endpoint;
+	/**
+	 * Process that sends the joining process its state
+	 */
+	public final int peer;
+
+	public Join(int sender_process, int time, String endpoint, int peer) {
+		super(sender_process, time);
+		this.endpoint = endpoint;
+		this.peer = peer;
+	}
+
+	public String toString() {
+		return String.format("JOIN[%d,%d,%s,%d]", sender_process, sender_time, endpoint, peer);
+	}
+}
@@ -0,0 +1,54 @@
+package ex1;
+
+import java.util.*;
+
+/**
+ * What a process keeps about a process that joins the group, until it has
+ * the marker of every other process. Messages from a process whose marker has
+ * not come yet were not sent to the joining process, so they don't wait for
+ * its acknowledgement. The peer of the join also records them, they are part
+ * of the state it sends.
+ */
+class JoinCut {
+	final int joiner;
+	/**
+	 * Whether the join itself was received, markers can come before it
+	 */
+	boolean joined = false;
+	/**
+	 * Processes whose marker has come
+	 */
+	final Set<Integer> marked = new HashSet<>();
+	/**
+	 * Processes whose marker has not come yet, once joined
+	 */
+	Set<Integer> unmarked;
+	/**
+	 * The state for the joining process if this is the peer, or null
+	 */
+	StateTransfer state;
+	/**
+	 * Received from the unmarked processes after the state was taken, if
+	 * this is the peer
+	 */
+	final List<Message> channel = new ArrayList<>();
+
+	JoinCut(int joiner) {
+		this.joiner = joiner;
+	}
+
+	/**
+	 * @return whether messages from process were sent before it took the
+	 *         joining process in
+	 */
+	boolean before(int process) {
+		return joined && unmarked.contains(process);
+	}
+
+	/**
+	 * @return whether every marker has come
+	 */
+	boolean complete() {
+		return joined && unmarked.isEmpty();
+	}
+}
@@ -0,0 +1,75 @@
+package ex1;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands messages for processes in the same JVM straight to them, and sends
+ * the messages for other processes with another transport.
+ *
+ * Messages are immutable, so the receiving process gets the same instances
+ * the sender made, nothing is serialized or copied. The message is received
+ * on the sending thread, like an RMI call is received on an RMI thread.
+ */
+public class LocalTransport implements Transport {
+	/**
+	 * Endpoint -> process in this JVM, shared by all local transports
+	 */
+	private final ConcurrentMap<String, Process> local;
+	private final String endpoint;
+	private final Transport remote;
+	private Process p;
+
+	private final AtomicLong local_sends = new AtomicLong(0);
+	private final AtomicLong remote_sends = new AtomicLong(0);
+
+	/**
+	 * @param local
+	 *            the processes in this JVM by endpoint, shared by their
+	 *            transports
+	 * @param endpoint
+	 *            endpoint of the process of this transport
+	 * @param remote
+	 *            transport to the processes in other JVMs
+	 */
+	public LocalTransport(ConcurrentMap<String, Process> local, String endpoint, Transport remote) {
+		this.local = local;
+		this.endpoint = endpoint;
+		this.remote = remote;
+	}
+
+	@Override
+	public void start(Process p) throws IOException {
+		this.p = p;
+		remote.start(p);
+		local.put(endpoint, p);
+	}
+
+	@Override
+	public void send(String endpoint, List<Message> ms) throws IOException {
+		Process q = local.get(endpoint);
+		if (q == null) {
+			remote_sends.incrementAndGet();
+			remote.send(endpoint, ms);
+			return;
+		}
+		local_sends.incrementAndGet();
+		if (ms.size() == 1) {
+			q.receive(ms.get(0));
+		} else {
+			q.receiveBatch(ms);
+		}
+	}
+
+	@Override
+	public void stop() {
+		local.remove(endpoint, p);
+		remote.stop();
+	}
+
+	public String toString() {
+		return String.format("local %d sends, remote %d sends, %s", local_sends.get(), remote_sends.get(), remote.toString());
+	}
+}
@@ -0,0 +1,217 @@
+package ex1;
+
+import java.util.Arrays;
+
+/**
+ * Map from long to long with open addressing and linear probing, nothing is
+ * boxed and lookups allocate nothing. Used with message ids as keys.
+ *
+ * Not synchronized.
+ */
+public class LongMap {
+	/**
+	 * Marks an empty slot, the key itself is kept apart
+	 */
+	private static final long FREE = Long.MIN_VALUE;
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private long[] values;
+	/**
+	 * Capacity - 1, the capacity is a power of two
+	 */
+	private int mask;
+	private int size = 0;
+	/**
+	 * Whether FREE is a key, and its value
+	 */
+	private boolean has_free = false;
+	private long free_value;
+
+	public LongMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * @param expected
+	 *            number of entries to make room for
+	 */
+	public LongMap(int expected) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2 * expected) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		values = new long[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Spread the bits of a key, ids differ mostly in their low and high
+	 * bits
+	 */
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/**
+	 * @return the slot of key, or -1 if it is not in the map
+	 */
+	private int find(long key) {
+		for (int i = slot(key);; i = (i + 1) & mask) {
+			long k = keys[i];
+			if (k == key) {
+				return i;
+			}
+			if (k == FREE) {
+				return -1;
+			}
+		}
+	}
+
+	public boolean containsKey(long key) {
+		return key == FREE ? has_free : find(key) >= 0;
+	}
+
+	/**
+	 * @return the value of key, or missing if it is not in the map
+	 */
+	public long get(long key, long missing) {
+		if (key == FREE) {
+			return has_free ? free_value : missing;
+		}
+		int i = find(key);
+		return i < 0 ? missing : values[i];
+	}
+
+	/**
+	 * Set the value of key
+	 */
+	public void put(long key, long value) {
+		if (key == FREE) {
+			size += has_free ? 0 : 1;
+			has_free = true;
+			free_value = value;
+			return;
+		}
+		int i = slot(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		// Keep at most half of the slots filled, probes stay short
+		if (++size > keys.length / 2) {
+			resize(2 * keys.length);
+		}
+	}
+
+	/**
+	 * Remove key
+	 * @return its value, or missing if it was not in the map
+	 */
+	public long remove(long key, long missing) {
+		if (key == FREE) {
+			if (!has_free) {
+				return missing;
+			}
+			has_free = false;
+			size--;
+			return free_value;
+		}
+		int i = find(key);
+		if (i < 0) {
+			return missing;
+		}
+		long value = values[i];
+		size--;
+		// Shift the entries after it back, so no probe sequence is broken
+		int hole = i;
+		for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			// Move j into the hole if its home is not in (hole, j]
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+		}
+		keys[hole] = FREE;
+		return value;
+	}
+
+	private void resize(int capacity) {
+		long[] oldkeys = keys;
+		long[] oldvalues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldkeys.length; i++) {
+			if (oldkeys[i] != FREE) {
+				int j = slot(oldkeys[i]);
+				while (keys[j] != FREE) {
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldkeys[i];
+				values[j] = oldvalues[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets every entry of the map
+	 */
+	public interface Visitor {
+		public void visit(long key, long value);
+	}
+
+	/**
+	 * Call visitor for every entry, in no particular order. The map must not
+	 * be changed meanwhile.
+	 */
+	public void forEach(Visitor visitor) {
+		if (has_free) {
+			visitor.visit(FREE, free_value);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE) {
+				visitor.visit(keys[i], values[i]);
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		has_free = false;
+		size = 0;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		if (has_free) {
+			sb.append(FREE).append('=').append(free_value);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != FREE) {
+				sb.append(sb.length() > 1 ? ", " : "").append(keys[i]).append('=').append(values[i]);
+			}
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,116 @@
+package ex1;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loses, duplicates and reorders the messages sent with another transport,
+ * each with its own chance, to test how the processes cope with a network
+ * that does.
+ *
+ * A reordered message is held back for REORDER_DELAY ms, the messages
+ * after it overtake it. Empty batches, which only check whether a process
+ * is there, are passed on as they are.
+ */
+public class LossyTransport implements Transport {
+	/**
+	 * Time in ms a reordered message is held back
+	 */
+	private static final int REORDER_DELAY = 5;
+
+	private final Transport transport;
+	private final double loss;
+	private final double duplicate;
+	private final double reorder;
+	private final ScheduledExecutorService delayer;
+
+	private final AtomicLong lost = new AtomicLong(0);
+	private final AtomicLong duplicated = new AtomicLong(0);
+	private final AtomicLong reordered = new AtomicLong(0);
+
+	/**
+	 * @param transport
+	 *            transport that carries the messages that get through
+	 * @param loss
+	 *            chance a message is lost
+	 * @param duplicate
+	 *            chance a message is sent twice
+	 * @param reorder
+	 *            chance a message is held back
+	 */
+	public LossyTransport(Transport transport, double loss, double duplicate, double reorder) {
+		this.transport = transport;
+		this.loss = loss;
+		this.duplicate = duplicate;
+		this.reorder = reorder;
+		this.delayer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "lossy-transport");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public void start(Process p) throws IOException {
+		transport.start(p);
+	}
+
+	@Override
+	public void send(final String endpoint, List<Message> ms) throws IOException {
+		if (ms.isEmpty()) {
+			transport.send(endpoint, ms);
+			return;
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		List<Message> through = new ArrayList<>(ms.size());
+		for (final Message m : ms) {
+			if (random.nextDouble() < loss) {
+				lost.incrementAndGet();
+				continue;
+			}
+			if (random.nextDouble() < reorder) {
+				reordered.incrementAndGet();
+				delayer.schedule(new Runnable() {
+					public void run() {
+						try {
+							transport.send(endpoint, Collections.singletonList(m));
+						} catch (IOException e) {
+							// Lost after all
+							lost.incrementAndGet();
+						}
+					}
+				}, REORDER_DELAY, TimeUnit.MILLISECONDS);
+				continue;
+			}
+			through.add(m);
+			if (random.nextDouble() < duplicate) {
+				duplicated.incrementAndGet();
+				through.add(m);
+			}
+		}
+		if (!through.isEmpty()) {
+			transport.send(endpoint, through);
+		}
+	}
+
+	@Override
+	public void stop() {
+		delayer.shutdownNow();
+		transport.stop();
+	}
+
+	public String toString() {
+		return String.format("lossy %d lost, %d duplicated, %d reordered, %s", lost.get(), duplicated.get(), reordered.get(), transport.toString());
+	}
+}
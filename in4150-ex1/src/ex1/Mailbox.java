@@ -0,0 +1,110 @@
+package ex1;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Inbound messages of a process, handled one at a time by a single event
+ * loop thread. The RMI threads only put messages in the mailbox, so the
+ * state of the process is only touched by the loop.
+ */
+public class Mailbox {
+	private final Process p;
+	private final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+	private final Thread loop;
+	private volatile boolean running = true;
+
+	private final long started = System.nanoTime();
+	/**
+	 * Time in ns the loop spent handling messages, only written by the loop
+	 */
+	private volatile long busy = 0;
+	private volatile long handled = 0;
+	private final AtomicInteger max_depth = new AtomicInteger(0);
+
+	public Mailbox(Process p) {
+		this.p = p;
+		this.loop = new Thread("P_" + p.process_id + "-loop") {
+			public void run() {
+				loop();
+			}
+		};
+		loop.setDaemon(true);
+		loop.start();
+	}
+
+	public void add(Message m) {
+		messages.add(m);
+		depth();
+	}
+
+	public void addAll(List<Message> ms) {
+		messages.addAll(ms);
+		depth();
+	}
+
+	private void depth() {
+		int depth = messages.size();
+		int max;
+		while (depth > (max = max_depth.get()) && !max_depth.compareAndSet(max, depth)) {
+		}
+	}
+
+	private void loop() {
+		while (running || !messages.isEmpty()) {
+			Message m;
+			try {
+				m = messages.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (m == null) {
+				continue;
+			}
+			long start = System.nanoTime();
+			try {
+				p.handle(m);
+			} catch (RuntimeException e) {
+				// Don't let one message stop the loop
+				p.logerr("Could not handle " + m.toString() + ": " + e.toString());
+				e.printStackTrace();
+			}
+			busy += System.nanoTime() - start;
+			handled++;
+		}
+	}
+
+	/**
+	 * Stop after the messages in the mailbox have been handled
+	 *
+	 * @param timeout
+	 *            time in ms to wait for the waiting messages
+	 */
+	public void stop(int timeout) {
+		running = false;
+		try {
+			loop.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of messages waiting
+	 */
+	public int getDepth() {
+		return messages.size();
+	}
+
+	/**
+	 * @return the fraction of time the loop was busy
+	 */
+	public double getUtilisation() {
+		return busy / (double) (System.nanoTime() - started);
+	}
+
+	public String toString() {
+		return String.format("%d handled, %d waiting (max %d), loop busy %.1f%%", handled, messages.size(), max_depth.get(), 100 * getUtilisation());
+	}
+}
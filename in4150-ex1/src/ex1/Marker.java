@@ -0,0 +1,26 @@
+package ex1;
+
+/**
+ * Sent by a process when it took a joining process into the group, the
+ * boundary between two epochs. What it sent before went to the old group,
+ * what it sends after also goes to the joining process.
+ */
+public class Marker extends Message {
+	private static final long serialVersionUID = 2278311618425893021L;
+
+	public final int joiner;
+	/**
+	 * Epoch of the group the joining process is in
+	 */
+	public final int epoch;
+
+	public Marker(int sender_process, int time, int joiner, int epoch) {
+		super(sender_process, time);
+		this.joiner = joiner;
+		this.epoch = epoch;
+	}
+
+	public String toString() {
+		return String.format("MARKER[%d,%d,%d,epoch %d]", sender_process, sender_time, joiner, epoch);
+	}
+}
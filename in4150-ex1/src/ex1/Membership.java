@@ -0,0 +1,581 @@
+package ex1;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The membership of the group as one process sees it: processes that join
+ * a running group, and failed processes that are taken out of it. Every join
+ * and removal starts a new epoch.
+ *
+ * A joining process gets a snapshot of a peer, taken in the way of Chandy and
+ * Lamport, see Process.join(). A failed process is taken out with view
+ * changes that pass on its messages, see Process.remove().
+ *
+ * The state of the joins and removals is under the acks lock of the
+ * process, like the queue it changes. The state of the own join is under the
+ * join lock.
+ */
+public class Membership {
+	/**
+	 * Time in ms the message at the top of the queue can be stuck before
+	 * the processes are probed, when failed processes are taken out
+	 */
+	private static final int PROBE_INTERVAL = 100;
+
+	private final Process p;
+
+	/**
+	 * Joining process -> what is kept about it while it joins. Under the
+	 * acks lock.
+	 */
+	private final Map<Integer, JoinCut> cuts = new HashMap<>();
+	/**
+	 * While this process joins, the messages received directly from the
+	 * others, which are handled after the state from the peer. Null when not
+	 * joining. Locked on joinlock, like the rest of the join.
+	 */
+	private volatile List<Message> join_buffer;
+	private StateTransfer join_state;
+	/**
+	 * Processes whose marker has not come yet
+	 */
+	private Set<Integer> join_markers;
+	/**
+	 * Highest clock of the markers
+	 */
+	private int join_clock;
+	private final Object joinlock = new Object();
+
+	/**
+	 * Number of the view of the group, every join and removal starts a new
+	 * epoch
+	 */
+	private volatile int epoch = 0;
+	/**
+	 * Processes that are being taken out of the group or were, nothing they
+	 * send is taken anymore. Under the acks lock.
+	 */
+	private final Set<Integer> removed = new HashSet<>();
+	/**
+	 * Process being taken out -> processes whose view change has not come
+	 * yet. Under the acks lock.
+	 */
+	private final Map<Integer, Set<Integer>> leaving = new HashMap<>();
+	/**
+	 * Whether a process is taken out of the group when sending to it fails
+	 */
+	private volatile boolean remove_failed = false;
+	private volatile boolean stopping = false;
+	private ScheduledExecutorService prober;
+	/**
+	 * Top of the queue at the last probe, only used by the prober
+	 */
+	private Message probed;
+
+	Membership(Process p) {
+		this.p = p;
+	}
+
+	/**
+	 * Send a join to the others and wait for their markers and the state
+	 * from the peer, then take it over. The checks are up to the process.
+	 * @return false if the join did not complete in time
+	 */
+	boolean join(int peer, long timeout, TimeUnit unit) throws InterruptedException {
+		Map<Integer, String> processes = p.getProcesses();
+		List<Integer> others = new ArrayList<>(processes.keySet());
+		others.remove((Integer) p.process_id);
+		Join j;
+		synchronized(joinlock) {
+			join_buffer = new ArrayList<>();
+			join_markers = new HashSet<>(others);
+			j = new Join(p.process_id, p.getClock(), processes.get(p.process_id), peer);
+		}
+		// Not delayed, the peer holds on to what it records until it is done
+		for(int pid : others) {
+			p.post(j, processes.get(pid), 0);
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized(joinlock) {
+			while(join_state == null || !join_markers.isEmpty()) {
+				long left = deadline - System.nanoTime();
+				if(left <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(joinlock, left);
+			}
+		}
+		install();
+		return true;
+	}
+
+	/**
+	 * Hold a message back while this process joins, it is handled after the
+	 * state from the peer
+	 * @return whether it was held back
+	 */
+	boolean holdBack(Message m) {
+		if(join_buffer == null) {
+			return false;
+		}
+		synchronized(joinlock) {
+			if(join_buffer == null) {
+				return false;
+			}
+			if(m instanceof ViewChange) {
+				viewWhileJoining((ViewChange)m);
+			}
+			join_buffer.add(m);
+			return true;
+		}
+	}
+
+	/**
+	 * A marker or the state for this process, while it joins
+	 */
+	private void joined(Message m) {
+		synchronized(joinlock) {
+			if(join_markers == null) {
+				p.logwarn("Not joining, ignoring " + m.toString());
+				return;
+			}
+			if(m instanceof Marker) {
+				join_markers.remove(m.sender_process);
+				join_clock = Math.max(join_clock, m.sender_time);
+				epoch = Math.max(epoch, ((Marker)m).epoch);
+			} else {
+				join_state = (StateTransfer)m;
+			}
+			joinlock.notifyAll();
+		}
+	}
+
+	/**
+	 * Take over the state from the peer, then handle what the others sent
+	 * before their marker and after it, in that order
+	 */
+	private void install() {
+		StateTransfer s;
+		int c;
+		synchronized(joinlock) {
+			s = join_state;
+			c = join_clock;
+			join_state = null;
+			join_markers = null;
+		}
+		p.loginfo("Joining with " + s.toString());
+		synchronized(p.acks) {
+			// Later than anything the others delivered without us
+			p.advanceClock(Math.max(c, s.sender_time));
+			p.resumeAfter(s.last);
+			for(Message m : s.messages) {
+				p.receiveMessage(m);
+			}
+			for(long[] a : s.acked) {
+				for(int i = 1; i < a.length; i++) {
+					p.acked((int)a[i], 0, a[0]);
+				}
+			}
+		}
+		if(s.rejoin) {
+			// The others could still wait for our acks from before
+			for(Message m : s.messages) {
+				p.sendNewAck(m);
+			}
+		}
+		for(Message m : s.channel) {
+			Message received = p.order(m);
+			if(received == null) {
+				continue;
+			}
+			if(s.rejoin) {
+				p.sendNewAck(received);
+			} else {
+				// Sent before we were in the group, nobody waits for our ack
+				synchronized(p.acks) {
+					p.acked(p.process_id, 0, received.getId());
+				}
+			}
+		}
+		while(true) {
+			List<Message> b;
+			synchronized(joinlock) {
+				if(join_buffer.isEmpty()) {
+					join_buffer = null;
+					break;
+				}
+				b = join_buffer;
+				join_buffer = new ArrayList<>();
+			}
+			for(Message m : b) {
+				p.process(m);
+			}
+		}
+		if(p.canDeliver()) {
+			p.deliver();
+		}
+	}
+
+	/**
+	 * A join, or a marker for another process that joins
+	 */
+	void handleJoin(Message m) {
+		if(m instanceof StateTransfer || (m instanceof Marker && ((Marker)m).joiner == p.process_id)) {
+			joined(m);
+			return;
+		}
+		JoinCut done = null;
+		synchronized(p.acks) {
+			int joiner = m instanceof Join ? m.sender_process : ((Marker)m).joiner;
+			JoinCut c = cuts.get(joiner);
+			if(c == null) {
+				c = new JoinCut(joiner);
+				cuts.put(joiner, c);
+			}
+			if(m instanceof Join) {
+				takeIn(c, (Join)m);
+			} else {
+				c.marked.add(m.sender_process);
+				if(c.joined) {
+					c.unmarked.remove(m.sender_process);
+				}
+			}
+			if(c.complete()) {
+				cuts.remove(joiner);
+				done = c;
+			}
+		}
+		if(done != null && done.state != null) {
+			p.post(done.state, p.getEndpoint(done.joiner), 0);
+		}
+	}
+
+	/**
+	 * Take a joining process into the group, under the acks lock
+	 */
+	private void takeIn(JoinCut c, Join j) {
+		if(!p.isFifo()) {
+			p.logwarn("Taking in process " + j.sender_process + " without a FIFO sender, it can miss messages");
+		}
+		// Nothing can be sent meanwhile, everything before the marker goes
+		// to the old group and everything after it to the new one
+		synchronized(p) {
+			Map<Integer, String> processes = p.getProcesses();
+			boolean rejoin = processes.containsKey(j.sender_process);
+			// It starts over after a restart, so does the channel to it
+			p.resetChannel(j.endpoint);
+			Map<Integer, String> n = new HashMap<>(processes);
+			n.put(j.sender_process, j.endpoint);
+			p.setProcesses(n);
+			// Taken out before, what it sends counts again
+			removed.remove(j.sender_process);
+			epoch++;
+			c.joined = true;
+			c.unmarked = new HashSet<>(n.keySet());
+			c.unmarked.remove(j.sender_process);
+			c.unmarked.removeAll(c.marked);
+			if(j.peer == p.process_id) {
+				List<Message> q = new ArrayList<>(p.messq);
+				Collections.sort(q);
+				c.state = new StateTransfer(p.process_id, p.getClock(), p.getLastTaken(), q, ((ExactAckTracker)p.acks).acknowledged(), c.channel, rejoin);
+			}
+			p.dropDuplicates();
+			p.send(new Marker(p.process_id, p.tick(), j.sender_process, epoch));
+		}
+	}
+
+	/**
+	 * Record what the peer of a join receives from the processes that did
+	 * not send their marker yet, under the acks lock
+	 */
+	void record(Message m) {
+		for(JoinCut c : cuts.values()) {
+			if(c.state != null && c.before(m.sender_process)) {
+				c.channel.add(m);
+			}
+		}
+	}
+
+	/**
+	 * A message sent before its sender took a joining process in does not
+	 * wait for the ack of that process, under the acks lock
+	 */
+	void gate(Message m) {
+		for(JoinCut c : cuts.values()) {
+			if(c.before(m.sender_process)) {
+				p.acks.acked(c.joiner, 0, m.getId());
+			}
+		}
+	}
+
+	/**
+	 * @return whether a join is going on, under the acks lock
+	 */
+	boolean isJoining() {
+		return !cuts.isEmpty();
+	}
+
+	/**
+	 * @return whether a process is being taken out or was, under the acks
+	 *         lock
+	 */
+	boolean isRemoved(int pid) {
+		return !removed.isEmpty() && removed.contains(pid);
+	}
+
+	/**
+	 * Take a process out of the group, see Process.remove()
+	 */
+	void remove(int pid) {
+		ViewChange v;
+		List<JoinCut> done = new ArrayList<>();
+		synchronized(p.acks) {
+			v = leave(pid, done);
+			// The last one left needs nobody's view change
+			installViews();
+		}
+		if(v != null) {
+			sendView(v, done);
+		}
+		if(p.canDeliver()) {
+			p.deliver();
+		}
+	}
+
+	/**
+	 * @return whether failed processes are taken out, and this process is
+	 *         not stopping
+	 */
+	boolean removesFailed() {
+		return remove_failed && !stopping;
+	}
+
+	/**
+	 * Take the process out of the group that an endpoint that could not be
+	 * sent to belongs to
+	 */
+	void removeFailed(String endpoint) {
+		for(Map.Entry<Integer, String> e : p.getProcesses().entrySet()) {
+			if(e.getValue().equals(endpoint) && e.getKey() != p.process_id) {
+				p.logwarn("Taking process " + e.getKey() + " out of the group, it can't be reached");
+				remove(e.getKey());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Start taking a process out of the group, under the acks lock
+	 * @param done gets the joins that no longer wait for it
+	 * @return the view change for the others, or null if it was already
+	 *         being taken out
+	 */
+	private ViewChange leave(int pid, List<JoinCut> done) {
+		if(pid == p.process_id || removed.contains(pid) || p.getEndpoint(pid) == null) {
+			return null;
+		}
+		removed.add(pid);
+		// Passed on messages can have been received already
+		p.dropDuplicates();
+		List<Message> kept = new ArrayList<>();
+		for(Message m : p.messq) {
+			if(m.sender_process == pid) {
+				kept.add(m);
+			}
+		}
+		Collections.sort(kept);
+		Set<Integer> waiting;
+		synchronized(p) {
+			Map<Integer, String> n = new HashMap<>(p.getProcesses());
+			n.remove(pid);
+			p.setProcesses(n);
+			waiting = new HashSet<>(n.keySet());
+		}
+		waiting.remove(p.process_id);
+		// It won't send its view change for the others
+		for(Set<Integer> w : leaving.values()) {
+			w.remove(pid);
+		}
+		leaving.put(pid, waiting);
+		// Joins don't wait for its marker, or for itself
+		cuts.remove(pid);
+		for(Iterator<JoinCut> i = cuts.values().iterator(); i.hasNext();) {
+			JoinCut c = i.next();
+			if(c.joined) {
+				c.unmarked.remove(pid);
+				if(c.complete()) {
+					i.remove();
+					done.add(c);
+				}
+			}
+		}
+		p.loginfo(String.format("Taking process %d out of the group, passing on %d of its messages", pid, kept.size()));
+		return new ViewChange(p.process_id, p.tick(), pid, kept);
+	}
+
+	/**
+	 * Start the next epoch for every process whose view change came from
+	 * all processes that stay, under the acks lock
+	 */
+	private void installViews() {
+		for(Iterator<Map.Entry<Integer, Set<Integer>>> i = leaving.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<Integer, Set<Integer>> e = i.next();
+			if(!e.getValue().isEmpty()) {
+				continue;
+			}
+			i.remove();
+			p.acks.removed(e.getKey());
+			epoch++;
+			p.loginfo(String.format("Epoch %d, process %d is out of the group", epoch, e.getKey()));
+		}
+	}
+
+	/**
+	 * Send a view change to the processes that stay, then the states of
+	 * the joins that were waiting for the removed process
+	 */
+	private void sendView(ViewChange v, List<JoinCut> done) {
+		for(Map.Entry<Integer, String> e : p.getProcesses().entrySet()) {
+			if(e.getKey() != p.process_id) {
+				p.post(v, e.getValue(), 0);
+			}
+		}
+		for(JoinCut c : done) {
+			if(c.state != null) {
+				p.post(c.state, p.getEndpoint(c.joiner), 0);
+			}
+		}
+	}
+
+	/**
+	 * A view change from another process, take the process out too and
+	 * take the messages of it that were passed on
+	 */
+	void handleView(ViewChange v) {
+		ViewChange own;
+		List<JoinCut> done = new ArrayList<>();
+		List<Message> received = new ArrayList<>();
+		synchronized(p.acks) {
+			if(v.removed == p.process_id) {
+				p.logwarn("Taken out of the group by process " + v.sender_process + ", it has to join again");
+				return;
+			}
+			if(removed.contains(v.sender_process)) {
+				// Being taken out itself
+				return;
+			}
+			own = leave(v.removed, done);
+			for(Message m : v.messages) {
+				if(p.receiveMessage(m)) {
+					received.add(m);
+				}
+			}
+			Set<Integer> waiting = leaving.get(v.removed);
+			if(waiting != null) {
+				waiting.remove(v.sender_process);
+			}
+			installViews();
+		}
+		if(own != null) {
+			sendView(own, done);
+		}
+		for(Message m : received) {
+			p.sendNewAck(m);
+		}
+		if(p.canDeliver()) {
+			p.deliver();
+		}
+	}
+
+	/**
+	 * A view change while this process joins, under the join lock. It is
+	 * handled after the state like the rest, but the others wait for the
+	 * view change of this process, and the join no longer waits for the
+	 * marker of the removed one.
+	 */
+	private void viewWhileJoining(ViewChange v) {
+		if(join_markers != null) {
+			join_markers.remove(v.removed);
+			joinlock.notifyAll();
+		}
+		ViewChange own;
+		List<JoinCut> done = new ArrayList<>();
+		synchronized(p.acks) {
+			own = v.removed == p.process_id || removed.contains(v.sender_process) ? null : leave(v.removed, done);
+		}
+		if(own != null) {
+			sendView(own, done);
+		}
+	}
+
+	/**
+	 * Take processes out of the group when sending to them fails, see
+	 * Process.setRemoveFailed()
+	 */
+	synchronized void setRemoveFailed(boolean remove_failed) {
+		this.remove_failed = remove_failed;
+		if(remove_failed && prober == null) {
+			prober = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "P_" + p.process_id + "-prober");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			prober.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					probe();
+				}
+			}, PROBE_INTERVAL, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * If the top of the queue did not move since the last probe, send an
+	 * empty batch to every other process, which fails for the ones that
+	 * stopped
+	 */
+	private void probe() {
+		Message head;
+		synchronized(p.acks) {
+			head = p.messq.peek();
+		}
+		if(head == null || head != probed) {
+			probed = head;
+			return;
+		}
+		for(Map.Entry<Integer, String> e : p.getProcesses().entrySet()) {
+			if(e.getKey() == p.process_id) {
+				continue;
+			}
+			try {
+				p.ping(e.getValue());
+			} catch (IOException ex) {
+				if(!stopping) {
+					p.logwarn("Taking process " + e.getKey() + " out of the group, it can't be reached");
+					remove(e.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of the view of the group
+	 */
+	int getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * Stop taking processes out, the process stops
+	 */
+	synchronized void stop() {
+		stopping = true;
+		if(prober != null) {
+			prober.shutdown();
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package ex1;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the deliveries of the groups of a ShardedProcess into one total
+ * order that is the same at every node: by time, then group, then sender.
+ *
+ * Every group delivers in order of (time, sender), so a message can be
+ * handed on once every other group has delivered something that comes after
+ * it. A group that has nothing to deliver would hold the merge up, so every
+ * tick the node broadcasts a null message in each group that does, with the
+ * time of the message that waits. Null messages are not handed on.
+ *
+ * Needs the groups to order with acknowledgements over FIFO senders, only
+ * then do they deliver in (time, sender) order.
+ */
+public class MergedTarget {
+	private final ShardedProcess node;
+	private final Target target;
+	/**
+	 * Delivered by each group and not handed on yet
+	 */
+	private final ArrayDeque<Message>[] buffers;
+	/**
+	 * Last message delivered by each group, or null
+	 */
+	private final Message[] last;
+	/**
+	 * Highest time a null message was broadcast with in each group
+	 */
+	private final int[] nulls;
+	private final ScheduledExecutorService ticker;
+
+	private long merged = 0;
+	private long null_messages = 0;
+
+	/**
+	 * @param tick
+	 *            time in ms between checks for groups holding the merge up
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public MergedTarget(ShardedProcess node, Target target, int tick) {
+		this.node = node;
+		this.target = target;
+		int groups = node.getGroups().size();
+		this.buffers = new ArrayDeque[groups];
+		for (int g = 0; g < groups; g++) {
+			buffers[g] = new ArrayDeque<>();
+		}
+		this.last = new Message[groups];
+		this.nulls = new int[groups];
+		this.ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "N_" + MergedTarget.this.node.process_id + "-merge");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ticker.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				tick();
+			}
+		}, tick, tick, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return the target group g delivers to
+	 */
+	public Target forGroup(final int g) {
+		return new BatchTarget() {
+			@Override
+			public void deliver(int deliveringPID, Message m) {
+				delivered(g, m);
+			}
+
+			@Override
+			public void deliver(int deliveringPID, List<Message> ms) {
+				for (Message m : ms) {
+					delivered(g, m);
+				}
+			}
+		};
+	}
+
+	private synchronized void delivered(int g, Message m) {
+		if (last[g] != null && m.compareTo(last[g]) <= 0) {
+			throw new IllegalStateException(String.format("Group %d delivered %s after %s", g, m, last[g]));
+		}
+		last[g] = m;
+		if (!(m instanceof NullMessage)) {
+			buffers[g].add(m);
+		}
+		// Under the lock, so the messages reach the target in merged order
+		for (int h = head(); h >= 0 && blocking(h) < 0; h = head()) {
+			target.deliver(node.process_id, buffers[h].poll());
+			merged++;
+		}
+	}
+
+	/**
+	 * @return the group with the first message of the merged order buffered,
+	 *         or -1 if nothing is buffered
+	 */
+	private int head() {
+		int h = -1;
+		for (int g = 0; g < buffers.length; g++) {
+			Message m = buffers[g].peek();
+			if (m != null && (h < 0 || m.sender_time < buffers[h].peek().sender_time)) {
+				h = g;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * @return a group that could still deliver a message before the head of
+	 *         group h, or -1 if none can
+	 */
+	private int blocking(int h) {
+		int time = buffers[h].peek().sender_time;
+		for (int g = 0; g < buffers.length; g++) {
+			if (g == h || !buffers[g].isEmpty()) {
+				// Whatever it delivers next comes after its buffered head
+				continue;
+			}
+			if (last[g] == null || last[g].sender_time < time || (last[g].sender_time == time && g < h)) {
+				return g;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Broadcast null messages in the groups that hold the merge up
+	 */
+	private void tick() {
+		int[] needed = new int[buffers.length];
+		synchronized (this) {
+			int h = head();
+			if (h < 0) {
+				return;
+			}
+			int time = buffers[h].peek().sender_time;
+			for (int g = 0; g < buffers.length; g++) {
+				if (g != h && buffers[g].isEmpty() && nulls[g] <= time && (last[g] == null || last[g].sender_time <= time)) {
+					needed[g] = nulls[g] = time + 1;
+					null_messages++;
+				}
+			}
+		}
+		// Not under the lock, broadcasting can wait for the sender
+		for (int g = 0; g < needed.length; g++) {
+			if (needed[g] > 0) {
+				node.getGroup(g).sendNullMessage(needed[g]);
+			}
+		}
+	}
+
+	public void stop() {
+		ticker.shutdownNow();
+	}
+
+	/**
+	 * @return the number of delivered messages that wait for other groups
+	 */
+	public synchronized int pending() {
+		int n = 0;
+		for (ArrayDeque<Message> b : buffers) {
+			n += b.size();
+		}
+		return n;
+	}
+
+	public synchronized String toString() {
+		return String.format("%d merged, %d waiting, %d null messages broadcast", merged, pending(), null_messages);
+	}
+}
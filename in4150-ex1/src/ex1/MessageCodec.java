@@ -0,0 +1,383 @@
+package ex1;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of messages for the socket transport.
+ *
+ * Every message is sent as a frame: the length of the rest of the frame as an
+ * int, then a type byte and the fields of the message as ints. Messages that
+ * carry another message write it inline without a length. Message classes
+ * this codec does not know are written with Java serialization, so new
+ * message types keep working, just not as compact.
+ */
+public class MessageCodec {
+	private static final byte MESSAGE = 0;
+	private static final byte ACK = 1;
+	private static final byte VECTOR_ACK = 2;
+	private static final byte SEQUENCED = 3;
+	private static final byte TOKEN = 4;
+	private static final byte STAMPED = 5;
+	private static final byte NULL = 6;
+	private static final byte PAYLOAD = 7;
+	private static final byte JOIN = 8;
+	private static final byte MARKER = 9;
+	private static final byte TRANSFER = 10;
+	private static final byte VIEW = 11;
+	private static final byte RELIABLE = 12;
+	private static final byte NACK = 13;
+	private static final byte SERIALIZED = 127;
+
+	/**
+	 * Frames longer than this are taken to be garbage
+	 */
+	public static final int MAX_FRAME = 16 * 1024 * 1024;
+
+	private MessageCodec() {
+	}
+
+	/**
+	 * Write m as a frame
+	 *
+	 * @return false if the frame did not fit, nothing is written then
+	 */
+	public static boolean writeFrame(ByteBuffer b, Message m) throws IOException {
+		int start = b.position();
+		try {
+			b.putInt(0);
+			write(b, m);
+		} catch (BufferOverflowException e) {
+			b.position(start);
+			return false;
+		}
+		b.putInt(start, b.position() - start - 4);
+		return true;
+	}
+
+	/**
+	 * Write m as a frame in a heap buffer of its own, for frames that don't
+	 * fit in a pooled buffer
+	 *
+	 * @return the buffer, flipped
+	 */
+	public static ByteBuffer frame(Message m, int size_hint) throws IOException {
+		int size = size_hint;
+		while (true) {
+			ByteBuffer b = ByteBuffer.allocate(size);
+			if (writeFrame(b, m)) {
+				b.flip();
+				return b;
+			}
+			if (size >= MAX_FRAME) {
+				throw new IOException(m + " is too large to send");
+			}
+			size = Math.min(2 * size, MAX_FRAME);
+		}
+	}
+
+	/**
+	 * Read the next frame, if it has arrived completely
+	 *
+	 * @return the message, or null if the frame is not complete yet and the
+	 *         position was left alone
+	 */
+	public static Message readFrame(ByteBuffer b) throws IOException {
+		if (b.remaining() < 4) {
+			return null;
+		}
+		int length = b.getInt(b.position());
+		if (length < 1 || length > MAX_FRAME) {
+			throw new IOException("Invalid frame length " + length);
+		}
+		if (b.remaining() < 4 + length) {
+			return null;
+		}
+		b.position(b.position() + 4);
+		int end = b.position() + length;
+		int limit = b.limit();
+		b.limit(end);
+		Message m;
+		try {
+			m = read(b);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Frame of " + length + " bytes is too short");
+		} finally {
+			b.limit(limit);
+		}
+		if (b.position() != end) {
+			throw new IOException("Frame of " + m + " has " + (end - b.position()) + " bytes left");
+		}
+		return m;
+	}
+
+	private static void write(ByteBuffer b, Message m) throws IOException {
+		Class<?> c = m.getClass();
+		// Exact classes, a subclass could have fields this codec doesn't know
+		if (c == Message.class) {
+			b.put(MESSAGE);
+			writeHeader(b, m);
+		} else if (c == Ack.class) {
+			Ack a = (Ack) m;
+			b.put(ACK);
+			writeHeader(b, a);
+			b.putInt(a.ackmsg_process);
+			b.putInt(a.ackmsg_time);
+		} else if (c == VectorAck.class) {
+			VectorAck v = (VectorAck) m;
+			b.put(VECTOR_ACK);
+			writeHeader(b, v);
+			b.putInt(v.size());
+			for (int i = 0; i < v.size(); i++) {
+				b.putInt(v.ackmsg_processes[i]);
+				b.putInt(v.ackmsg_times[i]);
+			}
+			if (v.message == null) {
+				b.put((byte) 0);
+			} else {
+				b.put((byte) 1);
+				write(b, v.message);
+			}
+		} else if (c == Sequenced.class) {
+			Sequenced s = (Sequenced) m;
+			b.put(SEQUENCED);
+			writeHeader(b, s);
+			b.putInt(s.seq);
+			write(b, s.message);
+		} else if (c == Stamped.class) {
+			Stamped s = (Stamped) m;
+			b.put(STAMPED);
+			writeHeader(b, s);
+			b.putInt(s.vector.length);
+			for (int v : s.vector) {
+				b.putInt(v);
+			}
+			write(b, s.message);
+		} else if (c == Payload.class) {
+			b.put(PAYLOAD);
+			writeHeader(b, m);
+			b.putInt(((Payload) m).data.length);
+			b.put(((Payload) m).data);
+		} else if (c == Join.class) {
+			Join j = (Join) m;
+			b.put(JOIN);
+			writeHeader(b, j);
+			b.putInt(j.peer);
+			byte[] endpoint = j.endpoint.getBytes(StandardCharsets.UTF_8);
+			b.putInt(endpoint.length);
+			b.put(endpoint);
+		} else if (c == Marker.class) {
+			b.put(MARKER);
+			writeHeader(b, m);
+			b.putInt(((Marker) m).joiner);
+			b.putInt(((Marker) m).epoch);
+		} else if (c == StateTransfer.class) {
+			StateTransfer s = (StateTransfer) m;
+			b.put(TRANSFER);
+			writeHeader(b, s);
+			b.put((byte) (s.rejoin ? 1 : 0));
+			if (s.last == null) {
+				b.put((byte) 0);
+			} else {
+				b.put((byte) 1);
+				write(b, s.last);
+			}
+			writeList(b, s.messages);
+			b.putInt(s.acked.size());
+			for (long[] a : s.acked) {
+				b.putInt(a.length);
+				for (long l : a) {
+					b.putLong(l);
+				}
+			}
+			writeList(b, s.channel);
+		} else if (c == Reliable.class) {
+			Reliable r = (Reliable) m;
+			b.put(RELIABLE);
+			writeHeader(b, r);
+			b.putLong(r.session);
+			b.putInt(r.seq);
+			write(b, r.message);
+		} else if (c == Nack.class) {
+			Nack n = (Nack) m;
+			b.put(NACK);
+			writeHeader(b, n);
+			b.putLong(n.session);
+			b.putInt(n.ack);
+			b.putInt(n.missing.length);
+			for (int seq : n.missing) {
+				b.putInt(seq);
+			}
+		} else if (c == ViewChange.class) {
+			b.put(VIEW);
+			writeHeader(b, m);
+			b.putInt(((ViewChange) m).removed);
+			writeList(b, ((ViewChange) m).messages);
+		} else if (c == NullMessage.class) {
+			b.put(NULL);
+			writeHeader(b, m);
+		} else if (c == Token.class) {
+			b.put(TOKEN);
+			writeHeader(b, m);
+			b.putInt(((Token) m).next_seq);
+		} else {
+			byte[] bytes = serialize(m);
+			b.put(SERIALIZED);
+			b.putInt(bytes.length);
+			b.put(bytes);
+		}
+	}
+
+	private static void writeList(ByteBuffer b, List<Message> ms) throws IOException {
+		b.putInt(ms.size());
+		for (Message m : ms) {
+			write(b, m);
+		}
+	}
+
+	private static List<Message> readList(ByteBuffer b) throws IOException {
+		int n = b.getInt();
+		if (n < 0 || n > b.remaining() / 9) {
+			throw new IOException("Invalid number of messages " + n);
+		}
+		List<Message> ms = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			ms.add(read(b));
+		}
+		return ms;
+	}
+
+	private static void writeHeader(ByteBuffer b, Message m) {
+		b.putInt(m.sender_process);
+		b.putInt(m.sender_time);
+	}
+
+	private static Message read(ByteBuffer b) throws IOException {
+		byte type = b.get();
+		if (type == SERIALIZED) {
+			byte[] bytes = new byte[b.getInt()];
+			b.get(bytes);
+			return deserialize(bytes);
+		}
+		int sender_process = b.getInt();
+		int sender_time = b.getInt();
+		switch (type) {
+		case MESSAGE:
+			return new Message(sender_process, sender_time);
+		case ACK:
+			return new Ack(sender_process, sender_time, b.getInt(), b.getInt());
+		case VECTOR_ACK:
+			int n = b.getInt();
+			if (n < 0 || n > b.remaining() / 8) {
+				throw new IOException("Invalid number of acks " + n);
+			}
+			int[] processes = new int[n];
+			int[] times = new int[n];
+			for (int i = 0; i < n; i++) {
+				processes[i] = b.getInt();
+				times[i] = b.getInt();
+			}
+			Message m = b.get() == 0 ? null : read(b);
+			return new VectorAck(sender_process, sender_time, processes, times, m);
+		case SEQUENCED:
+			int seq = b.getInt();
+			return new Sequenced(sender_process, sender_time, seq, read(b));
+		case PAYLOAD:
+			int size = b.getInt();
+			if (size < 0 || size > b.remaining()) {
+				throw new IOException("Invalid payload size " + size);
+			}
+			byte[] data = new byte[size];
+			b.get(data);
+			return new Payload(sender_process, sender_time, data);
+		case JOIN:
+			int peer = b.getInt();
+			int endpoint_length = b.getInt();
+			if (endpoint_length < 0 || endpoint_length > b.remaining()) {
+				throw new IOException("Invalid endpoint length " + endpoint_length);
+			}
+			byte[] endpoint = new byte[endpoint_length];
+			b.get(endpoint);
+			return new Join(sender_process, sender_time, new String(endpoint, StandardCharsets.UTF_8), peer);
+		case MARKER:
+			return new Marker(sender_process, sender_time, b.getInt(), b.getInt());
+		case TRANSFER:
+			boolean rejoin = b.get() != 0;
+			Message last = b.get() == 0 ? null : read(b);
+			List<Message> messages = readList(b);
+			int acked = b.getInt();
+			if (acked < 0 || acked > b.remaining() / 4) {
+				throw new IOException("Invalid number of acked messages " + acked);
+			}
+			List<long[]> acks = new ArrayList<>(acked);
+			for (int i = 0; i < acked; i++) {
+				int k = b.getInt();
+				if (k < 0 || k > b.remaining() / 8) {
+					throw new IOException("Invalid number of acks " + k);
+				}
+				long[] a = new long[k];
+				for (int j = 0; j < k; j++) {
+					a[j] = b.getLong();
+				}
+				acks.add(a);
+			}
+			return new StateTransfer(sender_process, sender_time, last, messages, acks, readList(b), rejoin);
+		case RELIABLE:
+			long session = b.getLong();
+			int number = b.getInt();
+			return new Reliable(sender_process, session, number, read(b));
+		case NACK:
+			long nack_session = b.getLong();
+			int ack = b.getInt();
+			int missing = b.getInt();
+			if (missing < 0 || missing > b.remaining() / 4) {
+				throw new IOException("Invalid number of missing messages " + missing);
+			}
+			int[] numbers = new int[missing];
+			for (int i = 0; i < missing; i++) {
+				numbers[i] = b.getInt();
+			}
+			return new Nack(sender_process, nack_session, ack, numbers);
+		case VIEW:
+			int removed = b.getInt();
+			return new ViewChange(sender_process, sender_time, removed, readList(b));
+		case NULL:
+			return new NullMessage(sender_process, sender_time);
+		case TOKEN:
+			return new Token(sender_process, sender_time, b.getInt());
+		case STAMPED:
+			int length = b.getInt();
+			if (length < 0 || length > b.remaining() / 4) {
+				throw new IOException("Invalid vector length " + length);
+			}
+			int[] vector = new int[length];
+			for (int i = 0; i < length; i++) {
+				vector[i] = b.getInt();
+			}
+			return new Stamped(sender_process, sender_time, vector, read(b));
+		default:
+			throw new IOException("Unknown message type " + type);
+		}
+	}
+
+	private static byte[] serialize(Message m) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(m);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static Message deserialize(byte[] bytes) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return (Message) in.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Could not read serialized message", e);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package ex1;
+
+/**
+ * Acknowledges every message on a channel up to a number, and asks for the
+ * missing ones after it that the receiver knows of
+ */
+public class Nack extends Message {
+	private static final long serialVersionUID = 3849170623574302298L;
+
+	public final long session;
+	/**
+	 * Every message up to and including this number was received
+	 */
+	public final int ack;
+	/**
+	 * Numbers after ack that did not come, while later ones did
+	 */
+	public final int[] missing;
+
+	public Nack(int sender_process, long session, int ack, int[] missing) {
+		super(sender_process, 0);
+		this.session = session;
+		this.ack = ack;
+		this.missing = missing;
+	}
+
+	public String toString() {
+		return String.format("NACK[%d,%d,%d missing]", sender_process, ack, missing.length);
+	}
+}
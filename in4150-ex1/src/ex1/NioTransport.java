@@ -0,0 +1,461 @@
+package ex1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends messages as binary frames over non-blocking sockets. Endpoints are
+ * host:port, every process listens on its own port.
+ *
+ * A process keeps one persistent connection to every process it sends to,
+ * opened on the first send. Sending threads only encode the messages into
+ * pooled direct buffers and queue them on the connection, one selector
+ * thread does all the writing, accepting and reading. Messages read from a
+ * connection are handed to the process in the order they were sent, so the
+ * connections are FIFO channels.
+ */
+public class NioTransport implements Transport {
+	private static final Logger logger = Logger.getLogger("Transport");
+
+	/**
+	 * Size of the pooled buffers, a batch of messages is written from as
+	 * few buffers as fit it
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_POOLED = 256;
+	/**
+	 * Time in ms stop() waits for the queued frames to be written
+	 */
+	private static final int STOP_TIMEOUT = 5000;
+
+	private final String endpoint;
+	private final InetSocketAddress address;
+	private final BufferPool pool = new BufferPool(BUFFER_SIZE, MAX_POOLED);
+
+	private Process p;
+	private Selector selector;
+	private ServerSocketChannel server;
+	private Thread loop;
+	private volatile boolean running = false;
+
+	/**
+	 * Endpoint -> outgoing connection
+	 */
+	private final ConcurrentMap<String, Peer> peers = new ConcurrentHashMap<>();
+	/**
+	 * Connections that have to be registered or have frames to write, for
+	 * the selector thread
+	 */
+	private final Queue<Peer> changes = new ConcurrentLinkedQueue<>();
+
+	private final AtomicLong frames_sent = new AtomicLong(0);
+	private final AtomicLong bytes_sent = new AtomicLong(0);
+	private final AtomicLong frames_received = new AtomicLong(0);
+	private final AtomicLong bytes_received = new AtomicLong(0);
+
+	/**
+	 * @param endpoint
+	 *            host:port to listen on
+	 */
+	public NioTransport(String endpoint) {
+		this.endpoint = endpoint;
+		this.address = address(endpoint);
+	}
+
+	/**
+	 * @return the address of a host:port endpoint
+	 */
+	public static InetSocketAddress address(String endpoint) {
+		int i = endpoint.lastIndexOf(':');
+		if (i < 0) {
+			throw new IllegalArgumentException("Endpoint " + endpoint + " is not host:port");
+		}
+		try {
+			return new InetSocketAddress(endpoint.substring(0, i), Integer.parseInt(endpoint.substring(i + 1)));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Endpoint " + endpoint + " is not host:port");
+		}
+	}
+
+	@Override
+	public void start(Process p) throws IOException {
+		this.p = p;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		running = true;
+		loop = new Thread(new Runnable() {
+			public void run() {
+				select();
+			}
+		}, "P_" + p.process_id + "-nio");
+		loop.setDaemon(true);
+		loop.start();
+	}
+
+	@Override
+	public void send(String endpoint, List<Message> ms) throws IOException {
+		if (!running) {
+			throw new IOException("Transport is stopped");
+		}
+		peer(endpoint).enqueue(ms);
+		frames_sent.addAndGet(ms.size());
+	}
+
+	/**
+	 * Get the connection to an endpoint, connecting if there is none yet
+	 */
+	private Peer peer(String endpoint) throws IOException {
+		Peer peer = peers.get(endpoint);
+		if (peer != null) {
+			return peer;
+		}
+		synchronized (peers) {
+			peer = peers.get(endpoint);
+			if (peer == null) {
+				// Blocking connect on the sending thread, the selector only
+				// handles connected channels
+				SocketChannel ch = SocketChannel.open(address(endpoint));
+				ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				ch.configureBlocking(false);
+				peer = new Peer(endpoint, ch);
+				peers.put(endpoint, peer);
+				changes.add(peer);
+				selector.wakeup();
+			}
+		}
+		return peer;
+	}
+
+	/**
+	 * The selector loop
+	 */
+	private void select() {
+		while (running) {
+			try {
+				Peer changed;
+				while ((changed = changes.poll()) != null) {
+					register(changed);
+				}
+				selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else if (key.attachment() instanceof Peer) {
+						Peer peer = (Peer) key.attachment();
+						if (key.isReadable()) {
+							closed(peer);
+						} else if (key.isWritable()) {
+							write(peer);
+						}
+					} else if (key.isReadable()) {
+						read(key);
+					}
+				}
+			} catch (IOException | ClosedSelectorException e) {
+				if (running) {
+					logger.log(Level.SEVERE, "Selector of " + endpoint + " failed", e);
+				}
+				return;
+			}
+		}
+	}
+
+	private void register(Peer peer) {
+		try {
+			if (peer.key == null) {
+				// Read to see the other side close, nothing is sent back
+				peer.key = peer.ch.register(selector, SelectionKey.OP_READ, peer);
+			}
+			write(peer);
+		} catch (ClosedChannelException e) {
+			close(peer, e);
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel ch = server.accept();
+		if (ch == null) {
+			return;
+		}
+		ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		ch.configureBlocking(false);
+		ch.register(selector, SelectionKey.OP_READ, new Inbound(ch));
+	}
+
+	/**
+	 * Read what has arrived on an incoming connection and hand the complete
+	 * frames to the process
+	 */
+	private void read(SelectionKey key) {
+		Inbound in = (Inbound) key.attachment();
+		List<Message> ms = new ArrayList<>();
+		try {
+			int n = in.ch.read(in.buffer);
+			if (n < 0) {
+				in.close();
+				return;
+			}
+			bytes_received.addAndGet(n);
+			in.buffer.flip();
+			Message m;
+			while ((m = MessageCodec.readFrame(in.buffer)) != null) {
+				ms.add(m);
+			}
+			in.buffer.compact();
+			if (!in.buffer.hasRemaining()) {
+				// A frame larger than the buffer, make room for it
+				ByteBuffer bigger = ByteBuffer.allocate(2 * in.buffer.capacity());
+				in.buffer.flip();
+				bigger.put(in.buffer);
+				pool.release(in.buffer);
+				in.buffer = bigger;
+			}
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Closing connection to " + endpoint, e);
+			in.close();
+		}
+		if (!ms.isEmpty()) {
+			frames_received.addAndGet(ms.size());
+			if (ms.size() == 1) {
+				p.receive(ms.get(0));
+			} else {
+				p.receiveBatch(ms);
+			}
+		}
+	}
+
+	/**
+	 * Write the queued frames of a connection until the socket can't take
+	 * more, then wait for it to become writable again
+	 */
+	private void write(Peer peer) {
+		try {
+			while (true) {
+				peer.flush();
+				ByteBuffer b;
+				while ((b = peer.out.peek()) != null) {
+					bytes_sent.addAndGet(peer.ch.write(b));
+					if (b.hasRemaining()) {
+						peer.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+						return;
+					}
+					peer.out.poll();
+					pool.release(b);
+				}
+				peer.key.interestOps(SelectionKey.OP_READ);
+				peer.writing.set(false);
+				// Frames could have been queued after the last peek
+				if (!peer.hasFrames() || !peer.writing.compareAndSet(false, true)) {
+					return;
+				}
+			}
+		} catch (IOException | CancelledKeyException e) {
+			close(peer, e);
+		}
+	}
+
+	/**
+	 * An outgoing connection became readable, which only happens when the
+	 * other side closed it. Dropped right away, otherwise the frames sent to
+	 * a process that restarts on the same endpoint are lost on it.
+	 */
+	private void closed(Peer peer) {
+		try {
+			if (peer.ch.read(ByteBuffer.allocate(64)) >= 0) {
+				return;
+			}
+			close(peer, new EOFException("Closed by " + peer.endpoint));
+		} catch (IOException e) {
+			close(peer, e);
+		}
+	}
+
+	/**
+	 * Drop a broken connection, the next send opens a new one
+	 */
+	private void close(Peer peer, Exception e) {
+		logger.log(Level.WARNING, String.format("Connection from %s to %s failed, %d frame buffers dropped", endpoint, peer.endpoint, peer.out.size()), e);
+		peers.remove(peer.endpoint, peer);
+		try {
+			peer.ch.close();
+		} catch (IOException e2) {
+		}
+		peer.clear();
+	}
+
+	@Override
+	public void stop() {
+		if (!running) {
+			return;
+		}
+		// Give the selector some time to write what has been queued
+		long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+		while (queued() > 0 && System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			loop.join(STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+		}
+		peers.clear();
+	}
+
+	/**
+	 * @return the number of connections with frames waiting to be written
+	 */
+	private int queued() {
+		int n = 0;
+		for (Peer peer : peers.values()) {
+			n += peer.hasFrames() ? 1 : 0;
+		}
+		return n;
+	}
+
+	public String toString() {
+		return String.format("NIO on %s, %d connections, sent %d frames (%d bytes), received %d frames (%d bytes), pool: %s", endpoint,
+				peers.size(), frames_sent.get(), bytes_sent.get(), frames_received.get(), bytes_received.get(), pool.toString());
+	}
+
+	/**
+	 * An outgoing connection and the frames waiting to be written to it.
+	 *
+	 * Frames are encoded into the buffer that is being filled, which is only
+	 * queued when it is full or the selector gets to write. So the frames of
+	 * many sends go out in one write, without waiting for more to come.
+	 */
+	private class Peer {
+		final String endpoint;
+		final SocketChannel ch;
+		/**
+		 * Full buffers, flipped, in the order they have to be written
+		 */
+		final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+		/**
+		 * Buffer frames are being written to, or null
+		 */
+		private ByteBuffer filling;
+		/**
+		 * Whether the selector has been asked to write, or is writing
+		 */
+		final AtomicBoolean writing = new AtomicBoolean(false);
+		/**
+		 * Only used by the selector thread
+		 */
+		SelectionKey key;
+
+		Peer(String endpoint, SocketChannel ch) {
+			this.endpoint = endpoint;
+			this.ch = ch;
+		}
+
+		/**
+		 * Encode messages and have the selector write them
+		 */
+		void enqueue(List<Message> ms) throws IOException {
+			// Locked, frames of concurrent sends must not interleave
+			synchronized (this) {
+				for (Message m : ms) {
+					if (filling == null) {
+						filling = pool.acquire();
+					}
+					if (MessageCodec.writeFrame(filling, m)) {
+						continue;
+					}
+					if (filling.position() > 0) {
+						filling.flip();
+						out.add(filling);
+						filling = pool.acquire();
+						if (MessageCodec.writeFrame(filling, m)) {
+							continue;
+						}
+					}
+					// Doesn't fit in a pooled buffer at all
+					out.add(MessageCodec.frame(m, 2 * BUFFER_SIZE));
+				}
+			}
+			if (writing.compareAndSet(false, true)) {
+				changes.add(this);
+				selector.wakeup();
+			}
+		}
+
+		/**
+		 * Queue the buffer that is being filled
+		 */
+		synchronized void flush() {
+			if (filling != null && filling.position() > 0) {
+				filling.flip();
+				out.add(filling);
+				filling = null;
+			}
+		}
+
+		synchronized boolean hasFrames() {
+			return !out.isEmpty() || (filling != null && filling.position() > 0);
+		}
+
+		synchronized void clear() {
+			out.clear();
+			filling = null;
+		}
+	}
+
+	/**
+	 * An incoming connection and the bytes read from it that are not a
+	 * complete frame yet
+	 */
+	private class Inbound {
+		final SocketChannel ch;
+		ByteBuffer buffer = pool.acquire();
+
+		Inbound(SocketChannel ch) {
+			this.ch = ch;
+		}
+
+		void close() {
+			try {
+				ch.close();
+			} catch (IOException e) {
+			}
+			pool.release(buffer);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package ex1;
+
+/**
+ * Message that is ordered like any other, but only tells the ones merging
+ * the orders of several groups that the group has moved on to its time. It
+ * is not handed on to targets by MergedTarget.
+ */
+public class NullMessage extends Message {
+	private static final long serialVersionUID = -2617010379880927458L;
+
+	public NullMessage(int sender_process, int time) {
+		super(sender_process, time);
+	}
+
+	public String toString() {
+		return String.format("NULL[%d,%d]", sender_process, sender_time);
+	}
+}
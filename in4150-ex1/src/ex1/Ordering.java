@@ -0,0 +1,67 @@
+package ex1;
+
+/**
+ * Decides in which order a process delivers the messages it receives. The
+ * default, when a process has no ordering set, is the acknowledgement based
+ * total ordering of Process itself.
+ */
+public interface Ordering {
+	/**
+	 * Start the ordering, called once all processes have been created
+	 */
+	public void start();
+
+	/**
+	 * Broadcast a new message of the process
+	 */
+	public void broadcast(Message m);
+
+	/**
+	 * Handle a message received by the process
+	 */
+	public void receive(Message m);
+
+	/**
+	 * @return the number of received messages that have not been delivered
+	 */
+	public int pending();
+
+	public enum MODE {
+		/**
+		 * Every process acknowledges every message, messages are delivered in
+		 * clock order once acknowledged by all
+		 */
+		ACKS,
+		/**
+		 * The process with the lowest id gives every message a sequence number
+		 */
+		SEQUENCER,
+		/**
+		 * The process holding a token that goes around gives its own messages
+		 * a sequence number
+		 */
+		TOKEN,
+		/**
+		 * Messages carry vector timestamps and are delivered in causal order,
+		 * not total order
+		 */
+		CAUSAL;
+
+		/**
+		 * @return the ordering for p, or null for the acknowledgement based
+		 *         ordering of Process itself
+		 */
+		public Ordering create(Process p) {
+			switch (this) {
+			case SEQUENCER:
+				return new SequencerOrdering(p);
+			case TOKEN:
+				return new TokenOrdering(p);
+			case CAUSAL:
+				return new CausalOrdering(p);
+			default:
+				return null;
+			}
+		}
+	}
+}
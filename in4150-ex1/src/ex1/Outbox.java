@@ -0,0 +1,141 @@
+package ex1;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Messages waiting to be sent to one process. Whatever has accumulated is sent
+ * in one call, of at most max_batch messages. A message waits at most linger
+ * ms for others to join it, or less if the batch fills up. Batches to the
+ * same process are sent one at a time and in order.
+ */
+public class Outbox {
+	private final Process p;
+	private final String endpoint;
+	private final Sender sender;
+	private final int max_batch;
+	private final int linger;
+
+	/**
+	 * Messages waiting to be sent
+	 */
+	private List<Message> waiting = new ArrayList<>();
+	/**
+	 * Whether a drain is scheduled or running
+	 */
+	private boolean scheduled = false;
+	/**
+	 * Held while taking and sending a batch, so batches stay in order
+	 */
+	private final ReentrantLock sending = new ReentrantLock();
+
+	private final AtomicLong batches = new AtomicLong(0);
+	private final AtomicLong messages = new AtomicLong(0);
+
+	private final Runnable drain = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * @param p
+	 *            the sending process
+	 * @param endpoint
+	 *            endpoint of the receiving process
+	 * @param sender
+	 *            sender to run the drains on
+	 * @param max_batch
+	 *            maximum number of messages in one call
+	 * @param linger
+	 *            maximum time in ms a message waits for others
+	 */
+	public Outbox(Process p, String endpoint, Sender sender, int max_batch, int linger) {
+		this.p = p;
+		this.endpoint = endpoint;
+		this.sender = sender;
+		this.max_batch = max_batch;
+		this.linger = linger;
+	}
+
+	/**
+	 * Add a message to be sent
+	 *
+	 * @param delay
+	 *            extra time in ms to wait before sending, if this message
+	 *            starts a new batch
+	 * @return false if the sender was stopped
+	 */
+	public boolean add(Message m, int delay) {
+		boolean full;
+		synchronized (this) {
+			waiting.add(m);
+			full = waiting.size() >= max_batch;
+			if (scheduled && !full) {
+				// Will be picked up by the drain that is coming
+				return true;
+			}
+			scheduled = true;
+		}
+		return sender.send(endpoint, drain, full ? 0 : linger + delay);
+	}
+
+	private void drain() {
+		// Loops, a message can be added after the last batch was taken but
+		// before the lock is released, its drain then finds the lock taken
+		while (sending.tryLock()) {
+			try {
+				List<Message> batch;
+				while ((batch = take()) != null) {
+					batches.incrementAndGet();
+					messages.addAndGet(batch.size());
+					p.transmit(endpoint, batch);
+				}
+			} finally {
+				sending.unlock();
+			}
+			synchronized (this) {
+				if (waiting.isEmpty()) {
+					scheduled = false;
+					return;
+				}
+			}
+		}
+		// Another drain is running, it checks for new messages after it
+		// releases the lock
+	}
+
+	/**
+	 * @return the next batch to send, or null if nothing is waiting
+	 */
+	private synchronized List<Message> take() {
+		if (waiting.isEmpty()) {
+			return null;
+		}
+		List<Message> batch;
+		if (waiting.size() <= max_batch) {
+			batch = waiting;
+			waiting = new ArrayList<>();
+		} else {
+			batch = new ArrayList<>(waiting.subList(0, max_batch));
+			waiting.subList(0, max_batch).clear();
+		}
+		return batch;
+	}
+
+	/**
+	 * @return the number of messages waiting
+	 */
+	public synchronized int size() {
+		return waiting.size();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public long getMessages() {
+		return messages.get();
+	}
+}
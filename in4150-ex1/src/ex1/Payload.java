@@ -0,0 +1,19 @@
+package ex1;
+
+/**
+ * Message carrying data for the target, the ordering does not look at it
+ */
+public class Payload extends Message {
+	private static final long serialVersionUID = 4380161503316290312L;
+
+	public final byte[] data;
+
+	public Payload(int sender_process, int time, byte[] data) {
+		super(sender_process, time);
+		this.data = data;
+	}
+
+	public String toString() {
+		return String.format("DATA[%d,%d,%d bytes]", sender_process, sender_time, data.length);
+	}
+}
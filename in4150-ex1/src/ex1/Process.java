@@ -1,242 +1,1417 @@
-package ex1;
-
-import java.rmi.*;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
-import java.util.*;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-
-public class Process extends UnicastRemoteObject implements Process_RMI {
-	private static final long serialVersionUID = -2731859865280472117L;
-
-	private final Logger log = Logger.getLogger("Process");
-
-	private Target target;
-	
-    /**
-     *  Scalar clock for this process
-     */
-	private int clock = 0;
-    /**
-     * Process id
-     */
-	public final int process_id;
-	/**
-	 * Map of all processes and their RMI strings
-	 */
-	private final Map<Integer, String> processes;
-	/**
-	 * RMI registry
-	 */
-	private final Registry rmireg;
-
-    /**
-     * Sorted queue of messages that have been received but not yet delivered
-     */
-	// PriorityBlockingQueue is a synchronized priority queue
-	Queue<Message> messq = new PriorityBlockingQueue<>();
-    /**
-     * For every received message, a list of processes that have yet to
-     * acknowledge it
-     */
-	Map<Message, Set<Integer>> ackList = new HashMap<>();
-
-    /**
-     * Make a process with a random ID between 0 and 2^32-1
-     * @throws RemoteException
-     */
-	public Process(Map<Integer, String> processmap, Registry r) throws RemoteException {
-		this(new Random().nextInt(), processmap, r);
-	}
-
-    /**
-     * Make a process with a specific process id
-     */
-	public Process(int process_id, Map<Integer, String> processmap, Registry r) throws RemoteException {
-		this.process_id = process_id;
-		this.processes = processmap;
-		this.rmireg = r;
-	}
-
-    /**
-     * Broadcast a new message from this process
-     */
-	public void sendNewMessage() {
-		send(new Message(process_id, ++clock));
-	}
-
-    /**
-     * Broadcast an acknowledgement
-     * @param m the message to be ack'ed
-     */
-	public void sendNewAck(Message m) {
-		send(new Ack(process_id, ++clock, m.sender_process, m.sender_time));
-	}
-
-	@Override
-	public void receive(Message m) {
-		loginfo("Received " + m.toString());
-		// When receiving a message, set the clock to the max of the current
-		// clock and the message time and increase
-		clock = Math.max(clock, m.sender_time) + 1;
-		
-		if(m instanceof Ack) {
-			Message ackedm = ((Ack)m).getAckedMsg();
-			populateAckList(ackedm);
-			Set<Integer> remaining_acks = ackList.get(ackedm);
-			// We've gotten an ack for m from this process, remove it from the list
-			remaining_acks.remove(m.sender_process);
-			// If the acked message is at the top of the queue and there's no more
-			// acks remaining, deliver!
-			if (remaining_acks.isEmpty() && ackedm.equals(messq.peek())) {
-				deliver();
-			}
-		} else {
-			// Put the message in the queue
-			messq.add(m);
-			// Populate the remaing acknowledgements list
-			populateAckList(m);
-			// Send acknowledgements for this message
-			sendNewAck(m);
-		}
-	}
-
-    /**
-     * Check to see if the message at the top of the queue can be delivered
-     * @return true if the top message can be delivered, false if not or if there is no message
-     */
-	private boolean canDeliver() {
-		Message m = messq.peek();
-		if (m == null) {
-			return false;
-		}
-		Set<Integer> remaining_acks = ackList.get(m);
-		if (remaining_acks == null) {
-			logwarn("The remaining ack list for the top message is null!");
-			return false;
-		}
-		return remaining_acks.isEmpty();
-	}
-
-	/**
-	 * Make the initial list of remaining acknowledgements for a message
-	 */
-	private void populateAckList(Message m) {
-        // If there isn't an set of processes already
-		if (!ackList.containsKey(m)) {
-            // Copy all processes into the new set
-			ackList.put(m, new HashSet<>(processes.keySet()));
-		}
-	}
-
-    /**
-     * "Deliver" the message
-     * As there is no process behind this just delete the message
-     */
-	private void deliver() {
-		// Deliver the message at the top of the queue
-		Message m = messq.poll();
-		if (m == null) {
-			logwarn("Deliver was called but there was no message to deliver!");
-			return;
-		}
-		// Get the remaining acknowledgments out of the ack map
-		Set<Integer> remaing_acks = ackList.get(m);
-		if (remaing_acks == null) {
-			logwarn(String
-					.format("Deliver was called for %s, but the acklist was null. Were acknowledgements ever administered?",
-							m.toString()));
-		} else if (!remaing_acks.isEmpty()) {
-			logerr(String
-					.format("Deliver was called for %s, but there were remaining acks! (was: %s)",
-							m.toString(), remaing_acks.toString()));
-		}
-		// Remove the acklist for m
-		ackList.remove(m);
-		loginfo("Delivered " + m.toString());
-		if(target != null) {
-			target.deliver(process_id, m);
-		}
-		// Check if we can deliver the next message
-		if (canDeliver()) {
-			deliver();
-		}
-	}
-
-	/**
-	 * Broadcast a message to all processes, with a [0,3]s random delay for each process
-	 * @param m the message
-	 */
-	public void send(Message m) {
-		send(m, true);
-	}
-	
-	/**
-	 * Broadcast a message to all processes
-	 * @param m the message
-	 * @param randomdelay Whether to introduce a random delay in [0,3]s for each process
-	 */
-	public void send(final Message m, final boolean randomdelay) {
-		loginfo("Broadcasting " + m.toString());
-		// Broadcast the message to every process (including this process)
-		for(final String p_rmi : processes.values()) {
-			new Thread() {
-				public void run() {
-					try {
-						if(randomdelay) {
-							randomDelay();
-						}
-						((Process_RMI)rmireg.lookup(p_rmi)).receive(m);
-					} catch (RemoteException | NotBoundException e) {
-						logerr(String.format("Could not send %s to %s", m, p_rmi));
-						e.printStackTrace();
-					}
-					
-				}
-			}.start();
-		}
-	}
-
-	private void randomDelay() {
-		// Random delay before sending [0.5,3]s
-		try {
-			Thread.sleep(new Random().nextInt(2500)+500);
-		} catch (InterruptedException e) {
-		}
-	}
-
-	private synchronized void loginfo(String msg) {
-		log(Level.INFO, msg);
-	}
-
-	private void logwarn(String msg) {
-		log(Level.WARNING, msg);
-	}
-
-	private void logerr(String msg) {
-		log(Level.SEVERE, msg);
-	}
-	
-	private synchronized void log(Level lvl, String msg) {
-		log.log(lvl, String.format("P_%d[%d]: %s", process_id, clock, msg));
-	}
-	
-	public void stop() {
-		try {
-			unexportObject(this, true);
-		} catch (NoSuchObjectException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-	}
-
-	public void setTarget(Target t) {
-		this.target = t;
-	}
-	
-	public void setClock(int c){
-		this.clock = c;
-	}
-}
+package ex1;
+
+import java.io.IOException;
+import java.rmi.*;
+import java.rmi.registry.Registry;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class Process implements Process_RMI {
+	private final Logger log = Logger.getLogger("Process");
+
+	private Target target;
+	/**
+	 * Hands delivered messages to the target on its own thread, or null to
+	 * deliver on the receiving thread
+	 */
+	private DeliveryPipeline pipeline;
+	/**
+	 * Received messages waiting for the event loop, or null to handle them
+	 * on the receiving thread
+	 */
+	private Mailbox mailbox;
+	/**
+	 * Held while taking deliverable messages off the queue
+	 */
+	private final Object deliverlock = new Object();
+	
+    /**
+     *  Scalar clock for this process
+     */
+	private int clock = 0;
+    /**
+     * Process id
+     */
+	public final int process_id;
+	/**
+	 * Map of all processes and their endpoints on the transport. Follows the
+	 * map the process was made with until it is started, after that it is
+	 * only changed by joins and view changes, by replacing it with a changed
+	 * copy.
+	 */
+	private volatile Map<Integer, String> processes;
+	/**
+	 * The ids in processes, whatever map that is
+	 */
+	private final Collection<Integer> members = new AbstractCollection<Integer>() {
+		public Iterator<Integer> iterator() {
+			return processes.keySet().iterator();
+		}
+
+		public int size() {
+			return processes.size();
+		}
+	};
+	/**
+	 * Carries the messages to the other processes
+	 */
+	private final Transport transport;
+	/**
+	 * Executes the sends of this process
+	 */
+	private final Sender sender;
+
+	/**
+	 * Default number of sender threads and maximum number of waiting sends
+	 */
+	public static final int DEFAULT_SENDER_THREADS = 8;
+	public static final int DEFAULT_SENDER_QUEUE = 1024;
+	/**
+	 * Time in ms that stop() waits for the sends that are still waiting
+	 */
+	private static final int STOP_TIMEOUT = 5000;
+
+    /**
+     * Sorted queue of messages that have been received but not yet delivered
+     */
+	// PriorityBlockingQueue is a synchronized priority queue
+	Queue<Message> messq = new PriorityBlockingQueue<>();
+    /**
+     * Acknowledgements received for the messages in the queue, also the lock
+     * of the queue
+     */
+	final AckTracker acks;
+	/**
+	 * Ordering used instead of the acknowledgements, or null
+	 */
+	private Ordering ordering;
+	/**
+	 * Whether to wait a random time before every send
+	 */
+	private boolean randomdelay = true;
+	/**
+	 * Number of messages sent to processes
+	 */
+	private final AtomicLong messages_sent = new AtomicLong(0);
+	/**
+	 * Number of remote calls made to send them
+	 */
+	private final AtomicLong calls = new AtomicLong(0);
+
+	/**
+	 * Maximum number of messages sent to a process in one call, 1 to send
+	 * every message on its own
+	 */
+	private int max_batch = 1;
+	/**
+	 * Maximum time in ms a message waits for others to be sent with
+	 */
+	private int linger = 0;
+	/**
+	 * Endpoint -> messages waiting to be sent to that process, only used
+	 * if messages are batched
+	 */
+	private final ConcurrentMap<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+	/**
+	 * Time in ms acknowledgements are held back to be sent together, 0 to
+	 * send them right away
+	 */
+	private int ack_window = 0;
+	/**
+	 * Messages that still have to be acknowledged, only used if acks are
+	 * held back
+	 */
+	private List<Message> pending_acks = new ArrayList<>();
+	/**
+	 * Sends the held back acknowledgements when the window has passed
+	 */
+	private ScheduledExecutorService ack_flusher;
+	/**
+	 * Number of ack broadcasts that were saved by sending acks together
+	 */
+	private final AtomicLong acks_saved = new AtomicLong(0);
+	private final long started = System.nanoTime();
+
+	/**
+	 * Credits for own broadcasts that are not delivered yet, or null if
+	 * there is no limit
+	 */
+	private Semaphore window;
+	private int window_size = 0;
+	/**
+	 * Number of times a broadcast had to wait for the window, or was refused
+	 */
+	private final AtomicLong window_waits = new AtomicLong(0);
+
+	/**
+	 * Log of what was received and delivered, or null
+	 */
+	private DeliveryLog dlog;
+	/**
+	 * Last message that was delivered, or null
+	 */
+	private volatile Message last_delivered;
+	/**
+	 * Messages recovered from the log that have to be acknowledged again,
+	 * and own messages that have to be sent again, on start()
+	 */
+	private List<Message> recovered_acks = new ArrayList<>();
+	private List<Message> recovered_own = new ArrayList<>();
+	/**
+	 * Payloads the log says were delivered, in order, for a target that
+	 * recovers its state
+	 */
+	private List<Payload> recovered_deliveries = new ArrayList<>();
+	/**
+	 * Maximum number of acknowledgements sent again in one message
+	 */
+	private static final int RECOVERY_ACKS = 1024;
+
+	/**
+	 * Latency and queue statistics
+	 */
+	private final ProcessStats stats = new ProcessStats();
+	/**
+	 * Id of own message -> time it was broadcast, locked on itself
+	 */
+	private final LongMap own_sent = new LongMap();
+	/**
+	 * Id of message in the queue -> time it was received, only used under
+	 * the acks lock. Also tells which messages are in the queue.
+	 */
+	private final LongMap received_at = new LongMap();
+	/**
+	 * Id of message in the queue that still misses acks -> time it was
+	 * received, only used under the acks lock
+	 */
+	private final LongMap awaiting = new LongMap();
+	/**
+	 * Marks a time that is not in one of the maps
+	 */
+	private static final long NO_TIME = Long.MIN_VALUE;
+
+	/**
+	 * Last message taken off the queue to be delivered, or null. Under the
+	 * acks lock, duplicates are checked against it.
+	 */
+	private Message last_taken;
+	/**
+	 * Drop messages and acks for messages up to the last one taken off the
+	 * queue, as they are sent again after a restart and around joins. Only
+	 * correct over FIFO channels.
+	 */
+	private volatile boolean dedup = false;
+	/**
+	 * Joins and removals of processes
+	 */
+	private final Membership membership;
+	/**
+	 * Numbers, acknowledges and sends again the messages to the others, null
+	 * if the transport is trusted
+	 */
+	private Reliability reliable;
+
+    /**
+     * Make a process with a random ID between 0 and 2^32-1
+     * @throws RemoteException
+     */
+	public Process(Map<Integer, String> processmap, Registry r) throws RemoteException {
+		this(new Random().nextInt(), processmap, r);
+	}
+
+    /**
+     * Make a process with a specific process id
+     */
+	public Process(int process_id, Map<Integer, String> processmap, Registry r) throws RemoteException {
+		this(process_id, processmap, r, new Sender("P_" + process_id + "-sender", DEFAULT_SENDER_THREADS, DEFAULT_SENDER_QUEUE));
+	}
+
+	/**
+	 * Make a process with a specific process id that sends using the given
+	 * sender
+	 */
+	public Process(int process_id, Map<Integer, String> processmap, Registry r, Sender s) throws RemoteException {
+		this(process_id, processmap, r, s, AckTracker.MODE.EXACT);
+	}
+
+	/**
+	 * Make a process with a specific process id that sends using the given
+	 * sender and keeps track of acknowledgements in the given way
+	 */
+	public Process(int process_id, Map<Integer, String> processmap, Registry r, Sender s, AckTracker.MODE ackmode) throws RemoteException {
+		this(process_id, processmap, new RmiTransport(r), s, ackmode);
+		// Exported right away, it can only be bound once it is
+		try {
+			transport.start(this);
+		} catch (IOException e) {
+			throw new RemoteException("Could not export process " + process_id, e);
+		}
+	}
+
+	/**
+	 * Make a process with a specific process id that sends over the given
+	 * transport, using the given sender, and keeps track of acknowledgements
+	 * in the given way. The transport still has to be started.
+	 */
+	public Process(int process_id, Map<Integer, String> processmap, Transport t, Sender s, AckTracker.MODE ackmode) throws RemoteException {
+		if(ackmode == AckTracker.MODE.WATERMARK && !s.isFifo()) {
+			throw new IllegalArgumentException("Watermark acknowledgements need a FIFO sender");
+		}
+		this.process_id = process_id;
+		this.processes = processmap;
+		this.transport = t;
+		this.sender = s;
+		this.acks = ackmode.create(members);
+		this.membership = new Membership(this);
+	}
+
+    /**
+     * Broadcast a new message from this process, waiting for room in the
+     * window if there is one
+     * @return the message, or null if interrupted or stopped while waiting
+     */
+	public Message sendNewMessage() {
+		return sendNewMessage(null);
+	}
+
+	/**
+	 * Broadcast a new message carrying data, waiting for room in the window
+	 * if there is one
+	 * @param data the data of the message, or null for a plain message
+	 * @return the message, or null if interrupted or stopped while waiting
+	 */
+	public Message sendNewMessage(byte[] data) {
+		if(window != null && !window.tryAcquire()) {
+			window_waits.incrementAndGet();
+			try {
+				window.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		return broadcast(data);
+	}
+
+	/**
+	 * Broadcast a new message from this process, if the window has room for
+	 * it
+	 * @return the message, or null if the window is full or the process was
+	 *         stopped
+	 */
+	public Message trySendNewMessage() {
+		return trySendNewMessage(null);
+	}
+
+	/**
+	 * Broadcast a new message carrying data, if the window has room for it
+	 * @param data the data of the message, or null for a plain message
+	 * @return the message, or null if the window is full or the process was
+	 *         stopped
+	 */
+	public Message trySendNewMessage(byte[] data) {
+		if(window != null && !window.tryAcquire()) {
+			window_waits.incrementAndGet();
+			return null;
+		}
+		return broadcast(data);
+	}
+
+	/**
+	 * Broadcast a new message from this process, waiting at most timeout for
+	 * room in the window
+	 * @return the message, or null if the window stayed full or the process
+	 *         was stopped
+	 */
+	public Message sendNewMessage(long timeout, TimeUnit unit) throws InterruptedException {
+		return sendNewMessage(null, timeout, unit);
+	}
+
+	/**
+	 * Broadcast a new message carrying data, waiting at most timeout for
+	 * room in the window
+	 * @param data the data of the message, or null for a plain message
+	 * @return the message, or null if the window stayed full or the process
+	 *         was stopped
+	 */
+	public Message sendNewMessage(byte[] data, long timeout, TimeUnit unit) throws InterruptedException {
+		if(window != null && !window.tryAcquire()) {
+			window_waits.incrementAndGet();
+			if(!window.tryAcquire(timeout, unit)) {
+				return null;
+			}
+		}
+		return broadcast(data);
+	}
+
+	/**
+	 * Broadcast a new message, it has a credit of the window if there is one
+	 * @return the message, or null if interrupted or stopped while waiting
+	 *         for room, the credit is given back then
+	 */
+	private Message broadcast(byte[] data) {
+		// Wait for room before taking the lock, the sends in the pool might need it
+		if(!awaitRoom()) {
+			if(window != null) {
+				window.release();
+			}
+			return null;
+		}
+		if(ordering != null) {
+			// Not under our lock, the ordering takes its own lock first
+			Message m = create(tick(), data);
+			sent(m);
+			ordering.broadcast(m);
+			return m;
+		}
+		synchronized(this) {
+			// The time is taken under the lock, so no ack with a later time
+			// can leave before the message
+			return newMessage(create(++clock, data));
+		}
+	}
+
+	private Message create(int time, byte[] data) {
+		return data == null ? new Message(process_id, time) : new Payload(process_id, time, data);
+	}
+
+	/**
+	 * Wait for room in the sender and the reliability layer, without holding
+	 * any locks
+	 * @return false if interrupted or stopped while waiting
+	 */
+	private boolean awaitRoom() {
+		return sender.awaitRoom() && (reliable == null || reliable.awaitRoom());
+	}
+
+	/**
+	 * Broadcast a null message with a time of at least time, without a
+	 * credit of the window. Only for ordering with acknowledgements.
+	 * @return the null message, or null if interrupted or stopped while
+	 *         waiting for room
+	 */
+	public Message sendNullMessage(int time) {
+		if(ordering != null) {
+			throw new IllegalStateException("Null messages are only ordered with acknowledgements");
+		}
+		if(!awaitRoom()) {
+			return null;
+		}
+		synchronized(this) {
+			clock = Math.max(clock, time - 1);
+			return newMessage(new NullMessage(process_id, ++clock));
+		}
+	}
+
+	// Synchronized so messages leave in the order of their clock
+	private synchronized Message newMessage(Message m) {
+		if(!(m instanceof NullMessage)) {
+			sent(m);
+			if(dlog != null) {
+				dlog.sent(m);
+			}
+		}
+		if(pending_acks.isEmpty()) {
+			send(m);
+		} else {
+			// Piggyback the acks that are waiting on the message
+			acks_saved.addAndGet(pending_acks.size());
+			send(new VectorAck(process_id, clock, takePendingAcks(), m));
+		}
+		return m;
+	}
+
+	/**
+	 * Remember when an own message was broadcast
+	 */
+	private void sent(Message m) {
+		long now = System.nanoTime();
+		synchronized(own_sent) {
+			own_sent.put(m.getId(), now);
+		}
+		stats.broadcasts.incrementAndGet();
+	}
+
+    /**
+     * Broadcast an acknowledgement
+     * @param m the message to be ack'ed
+     */
+	public synchronized void sendNewAck(Message m) {
+		if(ack_window <= 0) {
+			++clock;
+			if(dlog != null) {
+				// A restarted process must not use this time again
+				dlog.clock(clock);
+			}
+			send(new Ack(process_id, clock, m.sender_process, m.sender_time));
+			return;
+		}
+		pending_acks.add(m);
+		if(pending_acks.size() == 1) {
+			// First one of a new window
+			try {
+				ack_flusher.schedule(new Runnable() {
+					public void run() {
+						flushAcks();
+					}
+				}, ack_window, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// Stopping, send it right away
+				flushAcks();
+			}
+		}
+	}
+
+	/**
+	 * Broadcast all held back acknowledgements as one message
+	 */
+	private synchronized void flushAcks() {
+		// They could have been piggybacked in the meantime
+		if(pending_acks.isEmpty()) {
+			return;
+		}
+		acks_saved.addAndGet(pending_acks.size() - 1);
+		++clock;
+		if(dlog != null) {
+			dlog.clock(clock);
+		}
+		send(new VectorAck(process_id, clock, takePendingAcks(), null));
+	}
+
+	private List<Message> takePendingAcks() {
+		List<Message> l = pending_acks;
+		pending_acks = new ArrayList<>();
+		return l;
+	}
+
+	@Override
+	public void receiveBatch(List<Message> ms) {
+		if(mailbox != null) {
+			mailbox.addAll(ms);
+			return;
+		}
+		for(Message m : ms) {
+			handle(m);
+		}
+	}
+
+	@Override
+	public void receive(Message m) {
+		if(mailbox != null) {
+			mailbox.add(m);
+		} else {
+			handle(m);
+		}
+	}
+
+	/**
+	 * Handle a received message, on the receiving thread or on the event loop
+	 */
+	void handle(Message m) {
+		if(m instanceof Reliable || m instanceof Nack) {
+			// Hands the messages in it on, in order
+			if(reliable != null) {
+				reliable.receive(m);
+			}
+			return;
+		}
+		// Don't flood the log with the token going around
+		Level lvl = m instanceof Token ? Level.FINE : Level.INFO;
+		if(log.isLoggable(lvl)) {
+			log(lvl, "Received " + m.toString());
+		}
+		// When receiving a message, set the clock to the max of the current
+		// clock and the message time and increase
+		updateClock(m.sender_time);
+
+		if(m instanceof Join || m instanceof Marker || m instanceof StateTransfer) {
+			membership.handleJoin(m);
+			return;
+		}
+		if(membership.holdBack(m)) {
+			return;
+		}
+		process(m);
+	}
+
+	/**
+	 * Order and acknowledge a received message
+	 */
+	void process(Message m) {
+		if(m instanceof ViewChange) {
+			membership.handleView((ViewChange)m);
+			return;
+		}
+		if(ordering != null) {
+			ordering.receive(m);
+			return;
+		}
+		Message received = order(m);
+		if(received != null) {
+			// Send acknowledgements for this message
+			sendNewAck(received);
+		}
+		// If the message at the top of the queue has no more acks
+		// remaining, deliver!
+		if (canDeliver()) {
+			deliver();
+		}
+	}
+
+	/**
+	 * Put a received message in the queue and record the acks it carries
+	 * @return the message that has to be acknowledged, or null
+	 */
+	Message order(Message m) {
+		Message received = m;
+		// Messages can be received on several threads at once. Whichever
+		// thread records the last of a message and its acks also sees that
+		// it can be delivered.
+		synchronized(acks) {
+			if(membership.isRemoved(m.sender_process)) {
+				// Only what the others passed on when it was taken out counts
+				return null;
+			}
+			if(membership.isJoining()) {
+				membership.record(m);
+			}
+			if(m instanceof Ack) {
+				// We've gotten an ack from this process
+				Ack a = (Ack)m;
+				acked(a.sender_process, a.sender_time, a.getAckedId());
+				received = null;
+			} else if(m instanceof VectorAck) {
+				VectorAck va = (VectorAck)m;
+				for(int i=0;i<va.size();i++) {
+					acked(va.sender_process, va.sender_time, va.getAckedId(i));
+				}
+				received = va.message;
+			}
+			if(received != null && !receiveMessage(received)) {
+				// Sent again after a restart, still acknowledge it, the
+				// sender could have lost the acks
+				if(log.isLoggable(Level.INFO)) {
+					loginfo("Already had " + received.toString());
+				}
+			}
+		}
+		return received;
+	}
+
+	boolean receiveMessage(Message m) {
+		// last_delivered is set after the log commit, outside the acks lock,
+		// and messages leave received_at when they are taken off the queue
+		if(dedup && ((last_taken != null && !Message.after(m.getId(), last_taken)) || received_at.containsKey(m.getId()))) {
+			// Sent again after a restart or a join
+			return false;
+		}
+		if(dlog != null) {
+			dlog.received(m);
+		}
+		// Put the message in the queue
+		messq.add(m);
+		// Start waiting for acknowledgements
+		acks.received(m);
+		if(membership.isJoining()) {
+			membership.gate(m);
+		}
+		long now = System.nanoTime();
+		received_at.put(m.getId(), now);
+		stats.queue_depth.record(messq.size());
+		stats.acklist_size.record(acks.size());
+		// Its acks can have come in before it
+		if(acks.canDeliver(m)) {
+			stats.ack_completion.record(0);
+		} else {
+			awaiting.put(m.getId(), now);
+		}
+		return true;
+	}
+
+	/**
+	 * Record an acknowledgement sent by sender_process at sender_time for
+	 * the message with id acked, under the acks lock. Allocates nothing.
+	 */
+	void acked(int sender_process, int sender_time, long acked) {
+		if(dedup && last_taken != null && !Message.after(acked, last_taken)) {
+			// Sent again after a restart or a join, for a message that is delivered
+			return;
+		}
+		if(dlog != null) {
+			dlog.acked(sender_process, sender_time, acked);
+		}
+		acks.acked(sender_process, sender_time, acked);
+		long t = awaiting.get(acked, NO_TIME);
+		if(t != NO_TIME && acks.canDeliver(acked)) {
+			awaiting.remove(acked, NO_TIME);
+			stats.ack_completion.record((System.nanoTime() - t) / 1000);
+		}
+	}
+
+	private synchronized void updateClock(int time) {
+		clock = Math.max(clock, time) + 1;
+	}
+
+	/**
+	 * Increase the clock for a new message
+	 * @return the new clock value
+	 */
+	synchronized int tick() {
+		return ++clock;
+	}
+
+    /**
+     * Check to see if the message at the top of the queue can be delivered
+     * @return true if the top message can be delivered, false if not or if there is no message
+     */
+	boolean canDeliver() {
+		synchronized(acks) {
+			Message m = messq.peek();
+			if (m == null) {
+				return false;
+			}
+			return acks.canDeliver(m);
+		}
+	}
+
+    /**
+     * Deliver all messages at the top of the queue that have been
+     * acknowledged by everyone, as one run
+     */
+	void deliver() {
+		List<Message> run = new ArrayList<>();
+		// One thread at a time, so the runs are handed on in order
+		synchronized(deliverlock) {
+			synchronized(acks) {
+				Message m;
+				long now = System.nanoTime();
+				while((m = messq.peek()) != null && acks.canDeliver(m)) {
+					messq.remove(m);
+					// Forget the acknowledgements for m
+					acks.delivered(m);
+					run.add(m);
+					last_taken = m;
+					if(dlog != null) {
+						dlog.delivered(m);
+					}
+					// Watermarks can complete a message with an ack for another one
+					long t = awaiting.remove(m.getId(), NO_TIME);
+					if(t != NO_TIME) {
+						stats.ack_completion.record((now - t) / 1000);
+					}
+					t = received_at.remove(m.getId(), NO_TIME);
+					if(t != NO_TIME) {
+						stats.hold_back.record((now - t) / 1000);
+					}
+				}
+			}
+			if(run.isEmpty()) {
+				// Another thread got there first
+				return;
+			}
+			if(dlog != null) {
+				// On disk before the target sees them
+				dlog.commit();
+			}
+			last_delivered = run.get(run.size() - 1);
+			deliverToTarget(run);
+		}
+	}
+
+	/**
+	 * Hand a run of messages that are delivered in order to the target
+	 */
+	void deliverToTarget(List<Message> run) {
+		stats.deliveries.addAndGet(run.size());
+		long now = System.nanoTime();
+		for(Message m : run) {
+			if(m.sender_process != process_id) {
+				continue;
+			}
+			long t;
+			synchronized(own_sent) {
+				t = own_sent.remove(m.getId(), NO_TIME);
+			}
+			if(t != NO_TIME) {
+				stats.broadcast_latency.record((now - t) / 1000);
+				// Only the broadcasts that took a credit are in own_sent
+				if(window != null) {
+					window.release();
+				}
+			}
+		}
+		if(log.isLoggable(Level.INFO)) {
+			for(Message m : run) {
+				loginfo("Delivered " + m.toString());
+			}
+		}
+		if(pipeline != null) {
+			pipeline.put(run);
+		} else if(target instanceof BatchTarget) {
+			((BatchTarget)target).deliver(process_id, run);
+		} else if(target != null) {
+			for(Message m : run) {
+				target.deliver(process_id, m);
+			}
+		}
+	}
+
+	/**
+	 * Broadcast a message to all processes, with a [0,3]s random delay for
+	 * each process if random delays are on
+	 * @param m the message
+	 */
+	public void send(Message m) {
+		send(m, randomdelay);
+	}
+	
+	/**
+	 * Broadcast a message to all processes
+	 * @param m the message
+	 * @param randomdelay Whether to introduce a random delay in [0,3]s for each process
+	 */
+	public void send(final Message m, final boolean randomdelay) {
+		if(log.isLoggable(Level.INFO)) {
+			loginfo("Broadcasting " + m.toString());
+		}
+		// Broadcast the message to every process (including this process)
+		for(final String endpoint : processes.values()) {
+			post(m, endpoint, randomdelay ? randomDelay() : 0);
+		}
+	}
+
+	/**
+	 * Send a message to one process, with a random delay if random delays
+	 * are on
+	 * @param m the message
+	 * @param proc_id the process to send to
+	 * @param delay time in ms to wait before sending, on top of the random delay
+	 */
+	void send(Message m, int proc_id, int delay) {
+		String endpoint = processes.get(proc_id);
+		if(endpoint == null) {
+			logerr(String.format("Could not send %s to unknown process %d", m, proc_id));
+			return;
+		}
+		post(m, endpoint, delay + (randomdelay ? randomDelay() : 0));
+	}
+
+	/**
+	 * Let the sender send a message to one process, or add it to the outbox
+	 * for that process if messages are batched
+	 */
+	void post(Message message, final String endpoint, int delay) {
+		// Numbered before any delay, so the delays can't reorder the channel
+		final Message m = reliable != null ? reliable.wrap(endpoint, message) : message;
+		boolean sent;
+		if(max_batch > 1) {
+			sent = outbox(endpoint).add(m, delay);
+		} else {
+			sent = sender.send(endpoint, new Runnable() {
+				public void run() {
+					transmit(endpoint, Collections.singletonList(m));
+				}
+			}, delay);
+		}
+		if(!sent) {
+			logwarn(String.format("Could not send %s to %s, process is stopped", m, endpoint));
+		}
+	}
+
+	private Outbox outbox(String endpoint) {
+		Outbox o = outboxes.get(endpoint);
+		if(o == null) {
+			Outbox n = new Outbox(this, endpoint, sender, max_batch, linger);
+			o = outboxes.putIfAbsent(endpoint, n);
+			if(o == null) {
+				o = n;
+			}
+		}
+		return o;
+	}
+
+	/**
+	 * Send messages to one process in one call
+	 */
+	void transmit(String endpoint, List<Message> ms) {
+		try {
+			messages_sent.addAndGet(ms.size());
+			calls.incrementAndGet();
+			if(reliable != null) {
+				reliable.transmitted(endpoint, ms);
+			}
+			transport.send(endpoint, ms);
+		} catch (IOException e) {
+			if(membership.removesFailed() && !processes.containsValue(endpoint)) {
+				// Taken out of the group, the sends to it that were waiting fail
+				return;
+			}
+			logerr(String.format("Could not send %s to %s", ms.size() == 1 ? ms.get(0) : ms, endpoint));
+			e.printStackTrace();
+			if(membership.removesFailed()) {
+				membership.removeFailed(endpoint);
+			}
+		}
+	}
+
+	/**
+	 * Random delay before sending [0.5,3]s
+	 */
+	private int randomDelay() {
+		return new Random().nextInt(2500)+500;
+	}
+
+	synchronized void loginfo(String msg) {
+		log(Level.INFO, msg);
+	}
+
+	void logwarn(String msg) {
+		log(Level.WARNING, msg);
+	}
+
+	void logerr(String msg) {
+		log(Level.SEVERE, msg);
+	}
+	
+	private synchronized void log(Level lvl, String msg) {
+		if(!log.isLoggable(lvl)) {
+			return;
+		}
+		log.log(lvl, String.format("P_%d[%d]: %s", process_id, clock, msg));
+	}
+	
+	public void stop() {
+		membership.stop();
+		// Handle what has been received, the acks for it still have to go out
+		if(mailbox != null) {
+			mailbox.stop(STOP_TIMEOUT);
+		}
+		if(ack_flusher != null) {
+			ack_flusher.shutdown();
+			flushAcks();
+		}
+		// Let the sends that are still waiting finish, refuse new ones
+		if(!sender.stop(STOP_TIMEOUT)) {
+			logwarn("Not all waiting sends could be completed before stopping");
+		}
+		if(reliable != null) {
+			reliable.stop();
+		}
+		transport.stop();
+		if(pipeline != null) {
+			pipeline.stop(STOP_TIMEOUT);
+		}
+		if(dlog != null) {
+			try {
+				dlog.close();
+			} catch (IOException e) {
+				logerr("Could not close the delivery log");
+			}
+		}
+	}
+
+	public String status() {
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append(String.format("Status of Process %d:\n", process_id));
+		sb.append(String.format("\tclock: %d\n", clock));
+		sb.append(String.format("\tview: epoch %d, processes %s\n", membership.getEpoch(), new TreeSet<>(processes.keySet())));
+		if(ordering != null) {
+			sb.append(String.format("\tordering: %s, %d waiting\n", ordering.getClass().getSimpleName(), ordering.pending()));
+		} else {
+			synchronized(acks) {
+				sb.append(String.format("\tmessage queue: %d\n", messq.size()));
+			}
+			sb.append(String.format("\tack list: %d\n", acks.size()));
+		}
+		sb.append(String.format("\tmessages sent: %d in %d calls\n", messages_sent.get(), calls.get()));
+		if(mailbox != null) {
+			sb.append(String.format("\tmailbox: %s\n", mailbox.toString()));
+		}
+		if(pipeline != null) {
+			sb.append(String.format("\tdelivery: %s\n", pipeline.toString()));
+		}
+		sb.append(String.format("\tsender: %d queued, waited for room %d times\n", sender.getQueued(), sender.getWaits()));
+		if(window != null) {
+			sb.append(String.format("\twindow: %d in flight of %d, waited %d times\n", window_size - window.availablePermits(), window_size, window_waits.get()));
+		}
+		if(reliable != null) {
+			sb.append(String.format("\treliable: %s\n", reliable.toString()));
+		}
+		sb.append(String.format("\ttransport: %s\n", transport.toString()));
+		if(dlog != null) {
+			sb.append(String.format("\tlog: %s, last delivered %s\n", dlog.toString(), last_delivered));
+		}
+		if(ack_window > 0) {
+			double seconds = (System.nanoTime() - started) / 1e9;
+			sb.append(String.format("\tacks held back %d ms: %d broadcasts saved (%.1f/s)\n", ack_window, acks_saved.get(), acks_saved.get() / seconds));
+		}
+		
+		return sb.toString();
+	}
+
+	/**
+	 * Hold acknowledgements back for at most window ms, so they can be sent
+	 * together in one message or piggybacked on a new message
+	 * @param window time in ms, 0 to send acknowledgements right away
+	 */
+	public synchronized void setAckWindow(int window) {
+		this.ack_window = window;
+		if(window > 0 && ack_flusher == null) {
+			ack_flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "P_" + process_id + "-acks");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		} else if(window <= 0) {
+			flushAcks();
+		}
+	}
+
+	/**
+	 * @return the ordering used instead of acknowledgements, or null
+	 */
+	public Ordering getOrdering() {
+		return ordering;
+	}
+
+	/**
+	 * Order messages with the given ordering instead of acknowledgements.
+	 * Has to be set before any messages are sent.
+	 */
+	public void setOrdering(Ordering o) {
+		this.ordering = o;
+	}
+
+	/**
+	 * Start the ordering, once all processes have been created
+	 */
+	public void start() {
+		// From now on only joins change the group
+		processes = new HashMap<>(processes);
+		if(ordering != null) {
+			ordering.start();
+		}
+		if(dlog != null) {
+			recover();
+		}
+	}
+
+	/**
+	 * After a restart, send what could have been lost when the process
+	 * stopped: its own messages that are not delivered yet and the acks for
+	 * everything in the log. Acks in the sender queue are gone, while the
+	 * others can still be waiting for them.
+	 */
+	private void recover() {
+		for(Message m : recovered_own) {
+			send(m);
+		}
+		for(int i = 0; i < recovered_acks.size(); i += RECOVERY_ACKS) {
+			List<Message> l = recovered_acks.subList(i, Math.min(recovered_acks.size(), i + RECOVERY_ACKS));
+			synchronized(this) {
+				++clock;
+				dlog.clock(clock);
+				send(new VectorAck(process_id, clock, l, null));
+			}
+		}
+		recovered_own = Collections.emptyList();
+		recovered_acks = Collections.emptyList();
+		if(canDeliver()) {
+			deliver();
+		}
+	}
+
+	/**
+	 * Join a running group, instead of start(). The others take this process
+	 * in and send it a marker, in the way of Chandy and Lamport: what they
+	 * sent before it went to the old group, what they send after also comes
+	 * here. The peer takes a snapshot of its state when it takes this process
+	 * in and records what it receives from the others until their marker. It
+	 * sends both here once it has every marker. The group keeps going
+	 * meanwhile, and this process needs nothing that was delivered before.
+	 *
+	 * The map of processes has to have the group and this process. A process
+	 * that was in the group before can join again with the same id after a
+	 * restart. Only for exact acknowledgements over FIFO senders, at every
+	 * process, without a delivery log.
+	 * @param peer the process to get the state from
+	 * @return false if the join did not complete in time, the process can't
+	 *         be used then
+	 */
+	public boolean join(int peer, long timeout, TimeUnit unit) throws InterruptedException {
+		if(ordering != null || !(acks instanceof ExactAckTracker) || !isFifo() || dlog != null) {
+			throw new IllegalStateException("Joining needs exact acknowledgements over a FIFO sender, without a delivery log");
+		}
+		processes = new HashMap<>(processes);
+		return membership.join(peer, timeout, unit);
+	}
+
+	/**
+	 * Take a process out of the group, when it failed or was never started,
+	 * so nothing waits for its acknowledgements anymore. This process tells
+	 * the others with a view change, which carries the messages of the
+	 * failed process it did not deliver yet. Every other process does the
+	 * same when it hears of it, and ignores what the failed process sends
+	 * from then on. A process starts the next epoch once it has the view
+	 * change of every process that stays: it then has every message of the
+	 * failed process that any of them kept, and stops waiting for it.
+	 *
+	 * Over FIFO senders a process that goes on without the failed process
+	 * has whatever the failed process sent before the acks it used, so the
+	 * order stays the same everywhere. Only for ordering with acks.
+	 */
+	public void remove(int pid) {
+		if(ordering != null) {
+			throw new IllegalStateException("Taking processes out needs ordering with acknowledgements");
+		}
+		membership.remove(pid);
+	}
+
+	/**
+	 * Go on from the state of a peer that took every message up to last off
+	 * its queue, under the acks lock
+	 */
+	void resumeAfter(Message last) {
+		last_taken = last;
+		last_delivered = last;
+		dedup = true;
+	}
+
+	/**
+	 * Drop the messages and acks that were already had from now on, under
+	 * the acks lock
+	 */
+	void dropDuplicates() {
+		dedup = true;
+	}
+
+	/**
+	 * @return the last message taken off the queue, or null, under the acks
+	 *         lock
+	 */
+	Message getLastTaken() {
+		return last_taken;
+	}
+
+	/**
+	 * Log what is received and delivered to a delivery log, after recovering
+	 * the clock, the undelivered messages and their acknowledgements from
+	 * it. Only for ordering with acknowledgements over a FIFO sender, has to
+	 * be set before any messages are received. Messages and acks sent again
+	 * after a restart are recognised by coming before the last delivered
+	 * message, which only holds over FIFO channels.
+	 *
+	 * Acknowledgements for the logged messages and the own messages that
+	 * were not delivered are sent again on start(). The others ignore what
+	 * they already had.
+	 */
+	public void setLog(DeliveryLog l) throws IOException {
+		if(!isFifo()) {
+			throw new IllegalArgumentException("A delivery log needs a FIFO sender");
+		}
+		synchronized(acks) {
+			// Id -> received payload or null message that is not delivered yet
+			final Map<Long, Message> undelivered = new HashMap<>();
+			l.replay(new DeliveryLog.Replay() {
+				public void received(long id, byte[] data, boolean null_message) {
+					Message m = DeliveryLog.message(id, data, null_message);
+					if(m.getClass() != Message.class) {
+						undelivered.put(id, m);
+					}
+					messq.add(m);
+					acks.received(m);
+					received_at.put(id, System.nanoTime());
+					recovered_acks.add(m);
+					updateClock(m.sender_time);
+				}
+
+				public void sent(long id, byte[] data) {
+					recovered_own.add(DeliveryLog.message(id, data));
+					updateClock(Message.time(id));
+				}
+
+				public void acked(int sender_process, int sender_time, long acked) {
+					acks.acked(sender_process, sender_time, acked);
+					updateClock(sender_time);
+				}
+
+				public void delivered(long id) {
+					// The one in the queue, messages only equal their own class
+					Message m = undelivered.remove(id);
+					if(m instanceof Payload) {
+						recovered_deliveries.add((Payload)m);
+					} else if(m == null) {
+						m = new Message(Message.process(id), Message.time(id));
+					}
+					messq.remove(m);
+					acks.delivered(m);
+					received_at.remove(id, NO_TIME);
+					last_delivered = m;
+					last_taken = m;
+				}
+
+				public void clock(int c) {
+					updateClock(c);
+				}
+			});
+			this.dlog = l;
+			this.dedup = true;
+			// Own messages that were delivered made it to everyone
+			Iterator<Message> i = recovered_own.iterator();
+			while(last_taken != null && i.hasNext()) {
+				if(!Message.after(i.next().getId(), last_taken)) {
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop the log records of the messages up to and including m, once all
+	 * processes have delivered it
+	 */
+	public void truncateLog(Message m) throws IOException {
+		if(dlog != null) {
+			dlog.truncate(m);
+		}
+	}
+
+	/**
+	 * @return the payloads this process delivered before it was restarted,
+	 *         in order, as far as they are still in its log
+	 */
+	public List<Payload> getRecoveredDeliveries() {
+		return Collections.unmodifiableList(recovered_deliveries);
+	}
+
+	/**
+	 * @return the delivery log, or null
+	 */
+	public DeliveryLog getLog() {
+		return dlog;
+	}
+
+	/**
+	 * @return the last message this process delivered, or null
+	 */
+	public Message getLastDelivered() {
+		return last_delivered;
+	}
+
+	/**
+	 * Allow at most size own broadcasts that this process has not delivered
+	 * yet. sendNewMessage() then waits for one to be delivered, so a fast
+	 * process can't fill the queues of the others while a slow one holds up
+	 * delivery. Has to be set before any messages are sent.
+	 * @param size maximum number of undelivered own broadcasts, 0 for no limit
+	 */
+	public void setWindow(int size) {
+		this.window_size = size;
+		this.window = size > 0 ? new Semaphore(size) : null;
+	}
+
+	/**
+	 * Send the messages to a process in batches instead of one call per
+	 * message. Has to be set before any messages are sent.
+	 * @param max_batch maximum number of messages in one call, 1 to send every message on its own
+	 * @param linger maximum time in ms a message waits for others to be sent with
+	 */
+	public void setBatching(int max_batch, int linger) {
+		this.max_batch = max_batch;
+		this.linger = linger;
+	}
+
+	/**
+	 * Make the channels to the other processes reliable and FIFO, for
+	 * transports that lose, duplicate or reorder messages. The others have
+	 * to do the same. Has to be set before any messages are sent.
+	 * @param timeout time in ms before a message that was not acknowledged is sent again
+	 * @param capacity most messages not acknowledged per process, broadcasts wait for room
+	 */
+	public void setReliable(int timeout, int capacity) {
+		this.reliable = new Reliability(this, timeout, capacity);
+	}
+
+	/**
+	 * Whether the messages to a process arrive in the order they were sent
+	 */
+	boolean isFifo() {
+		return sender.isFifo() || reliable != null;
+	}
+
+	/**
+	 * @return the endpoint of a process in the group, or null
+	 */
+	String getEndpoint(int proc_id) {
+		return processes.get(proc_id);
+	}
+
+	/**
+	 * @return whether the process at an endpoint is in the group
+	 */
+	boolean isMember(String endpoint) {
+		return processes.containsValue(endpoint);
+	}
+
+	public void setRandomDelay(boolean randomdelay) {
+		this.randomdelay = randomdelay;
+	}
+
+	public boolean isRandomDelay() {
+		return randomdelay;
+	}
+
+	/**
+	 * Take processes out of the group when sending to them fails. Sends
+	 * that fail show a process that stopped while the group is busy, a
+	 * prober finds the ones that stall a quiet group.
+	 */
+	public void setRemoveFailed(boolean remove_failed) {
+		membership.setRemoveFailed(remove_failed);
+	}
+
+	/**
+	 * @return the number of the view of the group, it goes up with every
+	 *         join and removal this process saw
+	 */
+	public int getEpoch() {
+		return membership.getEpoch();
+	}
+
+	/**
+	 * @return the ids of all processes
+	 */
+	Collection<Integer> getProcessIds() {
+		return processes.keySet();
+	}
+
+	/**
+	 * @return process id -> endpoint of every process, the map is not
+	 *         changed anymore
+	 */
+	Map<Integer, String> getProcesses() {
+		return processes;
+	}
+
+	/**
+	 * Replace the map of processes, under the lock of the process
+	 */
+	void setProcesses(Map<Integer, String> p) {
+		processes = p;
+	}
+
+	/**
+	 * Send an empty batch to a process, to see whether it is there
+	 */
+	void ping(String endpoint) throws IOException {
+		transport.send(endpoint, Collections.<Message>emptyList());
+	}
+
+	/**
+	 * Start the channel to a process over, when it joins again after a
+	 * restart
+	 */
+	void resetChannel(String endpoint) {
+		if(reliable != null) {
+			reliable.reset(endpoint);
+		}
+	}
+	/**
+	 * @return the number of messages sent to processes
+	 */
+	public long getMessagesSent() {
+		return messages_sent.get();
+	}
+
+	/**
+	 * @return the number of remote calls made to send messages
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * Hand delivered messages to the target on a thread of its own, instead
+	 * of on the thread that received the last acknowledgement
+	 * @param capacity maximum number of runs of messages waiting for the target
+	 */
+	public void setAsyncDelivery(int capacity) {
+		DeliveryPipeline p = new DeliveryPipeline(process_id, capacity);
+		p.setTarget(target);
+		this.pipeline = p;
+	}
+
+	/**
+	 * Handle all received messages on one event loop thread instead of on
+	 * the RMI threads. Has to be set before any messages are received.
+	 */
+	public void setEventLoop() {
+		// The queue is only used under the acks lock, it doesn't have to be
+		// synchronized itself
+		messq = new PriorityQueue<>();
+		mailbox = new Mailbox(this);
+	}
+
+	/**
+	 * @return the latency and queue statistics of this process
+	 */
+	public ProcessStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * @return the number of received messages waiting to be delivered
+	 */
+	public int getQueueDepth() {
+		if(ordering != null) {
+			return ordering.pending();
+		}
+		synchronized(acks) {
+			return messq.size();
+		}
+	}
+
+	/**
+	 * @return the number of received messages waiting for the event loop
+	 */
+	public int getMailboxDepth() {
+		return mailbox == null ? 0 : mailbox.getDepth();
+	}
+
+	/**
+	 * @return the fraction of time the event loop was busy
+	 */
+	public double getLoopUtilisation() {
+		return mailbox == null ? 0 : mailbox.getUtilisation();
+	}
+
+	public void setTarget(Target t) {
+		this.target = t;
+		if(pipeline != null) {
+			pipeline.setTarget(t);
+		}
+	}
+	
+	public void setClock(int c){
+		this.clock = c;
+	}
+
+	synchronized int getClock() {
+		return clock;
+	}
+
+	/**
+	 * Move the clock up to at least time
+	 */
+	synchronized void advanceClock(int time) {
+		clock = Math.max(clock, time);
+	}
+}
@@ -0,0 +1,168 @@
+package ex1;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and queue statistics of a process, kept in histograms. Times are
+ * recorded in microseconds.
+ *
+ * broadcast latency: from sendNewMessage until the process delivers its own
+ * message. hold back: from receiving a message until delivering it. ack
+ * completion: from receiving a message until all its acknowledgements are
+ * in, with watermark acks an ack for a later message can complete it, that
+ * is only seen when it is delivered. Queue depth and ack list size are
+ * recorded on every received message. Hold back, ack completion and the
+ * sizes are only kept when ordering with acknowledgements.
+ */
+public class ProcessStats implements ProcessStatsMBean {
+	final Histogram broadcast_latency = new Histogram();
+	final Histogram hold_back = new Histogram();
+	final Histogram ack_completion = new Histogram();
+	final Histogram queue_depth = new Histogram();
+	final Histogram acklist_size = new Histogram();
+
+	final AtomicLong broadcasts = new AtomicLong(0);
+	final AtomicLong deliveries = new AtomicLong(0);
+	private volatile long since = System.nanoTime();
+
+	@Override
+	public long getBroadcasts() {
+		return broadcasts.get();
+	}
+
+	@Override
+	public long getDeliveries() {
+		return deliveries.get();
+	}
+
+	/**
+	 * @return the time in s since the statistics were started or reset
+	 */
+	public double getSeconds() {
+		return (System.nanoTime() - since) / 1e9;
+	}
+
+	@Override
+	public double getBroadcastsPerSecond() {
+		return broadcasts.get() / getSeconds();
+	}
+
+	@Override
+	public double getDeliveriesPerSecond() {
+		return deliveries.get() / getSeconds();
+	}
+
+	@Override
+	public double getBroadcastLatencyP50() {
+		return ms(broadcast_latency, 0.5);
+	}
+
+	@Override
+	public double getBroadcastLatencyP99() {
+		return ms(broadcast_latency, 0.99);
+	}
+
+	@Override
+	public double getBroadcastLatencyP999() {
+		return ms(broadcast_latency, 0.999);
+	}
+
+	@Override
+	public double getHoldBackP50() {
+		return ms(hold_back, 0.5);
+	}
+
+	@Override
+	public double getHoldBackP99() {
+		return ms(hold_back, 0.99);
+	}
+
+	@Override
+	public double getHoldBackP999() {
+		return ms(hold_back, 0.999);
+	}
+
+	@Override
+	public double getAckCompletionP50() {
+		return ms(ack_completion, 0.5);
+	}
+
+	@Override
+	public double getAckCompletionP99() {
+		return ms(ack_completion, 0.99);
+	}
+
+	@Override
+	public double getAckCompletionP999() {
+		return ms(ack_completion, 0.999);
+	}
+
+	@Override
+	public long getQueueDepthP50() {
+		return queue_depth.getPercentile(0.5);
+	}
+
+	@Override
+	public long getQueueDepthP99() {
+		return queue_depth.getPercentile(0.99);
+	}
+
+	@Override
+	public long getQueueDepthMax() {
+		return queue_depth.getMax();
+	}
+
+	@Override
+	public long getAckListSizeP50() {
+		return acklist_size.getPercentile(0.5);
+	}
+
+	@Override
+	public long getAckListSizeP99() {
+		return acklist_size.getPercentile(0.99);
+	}
+
+	@Override
+	public long getAckListSizeMax() {
+		return acklist_size.getMax();
+	}
+
+	@Override
+	public void reset() {
+		broadcast_latency.reset();
+		hold_back.reset();
+		ack_completion.reset();
+		queue_depth.reset();
+		acklist_size.reset();
+		broadcasts.set(0);
+		deliveries.set(0);
+		since = System.nanoTime();
+	}
+
+	private static double ms(Histogram h, double p) {
+		return h.getPercentile(p) / 1e3;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		double seconds = getSeconds();
+		sb.append(String.format("\tbroadcasts: %d (%.1f/s), deliveries: %d (%.1f/s) in %.1f s\n", broadcasts.get(), broadcasts.get() / seconds,
+				deliveries.get(), deliveries.get() / seconds, seconds));
+		sb.append(times("broadcast latency", broadcast_latency));
+		sb.append(times("hold back", hold_back));
+		sb.append(times("ack completion", ack_completion));
+		sb.append(sizes("queue depth", queue_depth));
+		sb.append(sizes("ack list size", acklist_size));
+		return sb.toString();
+	}
+
+	private static String times(String name, Histogram h) {
+		return String.format("\t%s: p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms (%d)\n", name, ms(h, 0.5), ms(h, 0.99), ms(h, 0.999),
+				h.getMax() / 1e3, h.getCount());
+	}
+
+	private static String sizes(String name, Histogram h) {
+		return String.format("\t%s: p50 %d, p99 %d, p999 %d, max %d\n", name, h.getPercentile(0.5), h.getPercentile(0.99), h.getPercentile(0.999),
+				h.getMax());
+	}
+}
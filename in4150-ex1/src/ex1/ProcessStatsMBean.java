@@ -0,0 +1,46 @@
+package ex1;
+
+/**
+ * The statistics of a process as seen through JMX. Times are in ms.
+ */
+public interface ProcessStatsMBean {
+	public long getBroadcasts();
+
+	public long getDeliveries();
+
+	public double getBroadcastsPerSecond();
+
+	public double getDeliveriesPerSecond();
+
+	public double getBroadcastLatencyP50();
+
+	public double getBroadcastLatencyP99();
+
+	public double getBroadcastLatencyP999();
+
+	public double getHoldBackP50();
+
+	public double getHoldBackP99();
+
+	public double getHoldBackP999();
+
+	public double getAckCompletionP50();
+
+	public double getAckCompletionP99();
+
+	public double getAckCompletionP999();
+
+	public long getQueueDepthP50();
+
+	public long getQueueDepthP99();
+
+	public long getQueueDepthMax();
+
+	public long getAckListSizeP50();
+
+	public long getAckListSizeP99();
+
+	public long getAckListSizeMax();
+
+	public void reset();
+}
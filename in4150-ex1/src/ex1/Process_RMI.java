@@ -1,11 +1,18 @@
-package ex1;
-
-import java.rmi.Remote;
-
-public interface Process_RMI extends Remote {
-    /**
-     * Send a message to this process
-     * @param m the message to send to this process
-     */
-	public void receive(Message m) throws java.rmi.RemoteException;
+package ex1;
+
+import java.rmi.Remote;
+import java.util.List;
+
+public interface Process_RMI extends Remote {
+    /**
+     * Send a message to this process
+     * @param m the message to send to this process
+     */
+	public void receive(Message m) throws java.rmi.RemoteException;
+
+    /**
+     * Send several messages to this process in one call
+     * @param ms the messages, handled in order
+     */
+	public void receiveBatch(List<Message> ms) throws java.rmi.RemoteException;
 }
\ No newline at end of file
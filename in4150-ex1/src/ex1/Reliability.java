@@ -0,0 +1,486 @@
+package ex1;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes the channels of a process reliable and FIFO over a transport that
+ * loses, duplicates and reorders messages.
+ *
+ * Every message is numbered per destination when it is posted, before any
+ * delay of the sender, and kept until the destination acknowledges it. A
+ * receiver hands the messages on in the order of their numbers, drops the
+ * ones it already had and holds the ones that came early. Every TICK ms it
+ * acknowledges what it received with a Nack, which also asks for the
+ * numbers it saw a gap at. A gap is asked for as soon as it is seen. What is
+ * neither acknowledged nor asked for is sent again after a timeout, that
+ * doubles every time the message is sent again.
+ *
+ * At most capacity messages are kept per destination. Broadcasts wait for
+ * room with awaitRoom(), the messages sent because of received ones don't
+ * wait, like with the Sender. A receiver holds at most capacity early
+ * messages per sender, the rest are sent again.
+ */
+public class Reliability {
+	/**
+	 * Time in ms between acknowledgements and timeout checks
+	 */
+	private static final int TICK = 5;
+	/**
+	 * Most numbers asked for in one nack
+	 */
+	private static final int MAX_NACKED = 64;
+	/**
+	 * Most times the timeout of a message doubles
+	 */
+	private static final int MAX_BACKOFF = 6;
+	/**
+	 * Time in ns a message has to be on its way before a gap at it counts
+	 * as a loss, the sends of a sender with several threads overtake each
+	 * other
+	 */
+	private static final long GAP = TimeUnit.MILLISECONDS.toNanos(2);
+
+	/**
+	 * Sessions of new channels, later ones are higher, also after a restart
+	 */
+	private static final AtomicLong sessions = new AtomicLong(System.currentTimeMillis() * 1000);
+
+	private final Process p;
+	/**
+	 * Time in ns before a message is sent again
+	 */
+	private final long timeout;
+	private final int capacity;
+	/**
+	 * Destination endpoint -> what was sent to it
+	 */
+	private final ConcurrentMap<String, Out> outs = new ConcurrentHashMap<>();
+	/**
+	 * Sending process -> what was received from it
+	 */
+	private final ConcurrentMap<Integer, In> ins = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService timer;
+	/**
+	 * Monitor for callers waiting in awaitRoom()
+	 */
+	private final Object room = new Object();
+	private volatile boolean running = true;
+
+	private final AtomicLong timeouts = new AtomicLong(0);
+	private final AtomicLong nacked = new AtomicLong(0);
+	private final AtomicLong duplicates = new AtomicLong(0);
+	private final AtomicLong early = new AtomicLong(0);
+	private final AtomicLong nacks = new AtomicLong(0);
+	private final AtomicLong waits = new AtomicLong(0);
+
+	/**
+	 * @param timeout
+	 *            time in ms before a message that was not acknowledged is sent
+	 *            again
+	 * @param capacity
+	 *            most messages kept per destination
+	 */
+	public Reliability(Process p, int timeout, int capacity) {
+		this.p = p;
+		this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+		this.capacity = capacity;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "P_" + Reliability.this.p.process_id + "-reliability");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				tick();
+			}
+		}, TICK, TICK, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Number a message for a destination and keep it until it is
+	 * acknowledged
+	 * @return the message to send instead
+	 */
+	public Message wrap(String endpoint, Message m) {
+		Out o = outs.get(endpoint);
+		if (o == null) {
+			Out n = new Out();
+			o = outs.putIfAbsent(endpoint, n);
+			if (o == null) {
+				o = n;
+			}
+		}
+		synchronized (o) {
+			Reliable r = new Reliable(p.process_id, o.session, o.base + o.size, m);
+			o.add(new Entry(r));
+			return r;
+		}
+	}
+
+	/**
+	 * Messages are about to be handed to the transport, their timeouts start
+	 */
+	public void transmitted(String endpoint, List<Message> ms) {
+		Out o = outs.get(endpoint);
+		if (o == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		synchronized (o) {
+			for (Message m : ms) {
+				if (m instanceof Reliable) {
+					Reliable r = (Reliable) m;
+					Entry e = r.session == o.session ? o.get(r.seq) : null;
+					if (e != null && e.sent == 0) {
+						e.sent = now;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Handle a numbered message or a nack. The messages that are next on
+	 * their channel are handed to the process, in order, on this thread.
+	 */
+	public void receive(Message m) {
+		if (m instanceof Nack) {
+			nacked((Nack) m);
+			return;
+		}
+		Reliable r = (Reliable) m;
+		In in = ins.get(r.sender_process);
+		if (in == null) {
+			In n = new In();
+			in = ins.putIfAbsent(r.sender_process, n);
+			if (in == null) {
+				in = n;
+			}
+		}
+		Nack nack = null;
+		// Handed on under the lock, so they are handled in order
+		synchronized (in) {
+			if (r.session < in.session) {
+				// From a channel that was replaced
+				duplicates.incrementAndGet();
+				return;
+			}
+			if (r.session > in.session) {
+				in.reset(r.session);
+			}
+			in.owed = true;
+			if (r.seq < in.next || in.early.containsKey(r.seq)) {
+				duplicates.incrementAndGet();
+				return;
+			}
+			if (r.seq > in.next) {
+				if (in.early.size() >= capacity) {
+					// Dropped, it is sent again
+					return;
+				}
+				in.early.put(r.seq, r.message);
+				in.highest = Math.max(in.highest, r.seq);
+				early.incrementAndGet();
+				// Ask for the gap right away, unless it was asked for just now
+				long now = System.nanoTime();
+				if (now - in.nacked > GAP) {
+					nack = in.nack(p.process_id, now);
+				}
+			} else {
+				p.handle(r.message);
+				in.next++;
+				Message e;
+				while ((e = in.early.remove(in.next)) != null) {
+					p.handle(e);
+					in.next++;
+				}
+			}
+		}
+		if (nack != null) {
+			send(r.sender_process, nack);
+		}
+	}
+
+	/**
+	 * Forget what was acknowledged and send the missing messages again
+	 */
+	private void nacked(Nack n) {
+		String endpoint = p.getEndpoint(n.sender_process);
+		Out o = endpoint == null ? null : outs.get(endpoint);
+		if (o == null) {
+			return;
+		}
+		List<Message> again = new ArrayList<>();
+		boolean freed;
+		synchronized (o) {
+			if (n.session != o.session) {
+				return;
+			}
+			int before = o.size;
+			o.ack(n.ack);
+			freed = o.size < capacity && before >= capacity;
+			long now = System.nanoTime();
+			for (int seq : n.missing) {
+				Entry e = o.get(seq);
+				// Not the ones that could still be on their way
+				if (e != null && e.sent != 0 && now - e.sent > GAP) {
+					e.sent = now;
+					again.add(e.r);
+				}
+			}
+		}
+		if (freed) {
+			synchronized (room) {
+				room.notifyAll();
+			}
+		}
+		if (!again.isEmpty()) {
+			nacked.addAndGet(again.size());
+			p.transmit(endpoint, again);
+		}
+	}
+
+	/**
+	 * Acknowledge what was received, ask for the gaps again and send the
+	 * messages that timed out again
+	 */
+	private void tick() {
+		long now = System.nanoTime();
+		for (Map.Entry<Integer, In> i : ins.entrySet()) {
+			In in = i.getValue();
+			Nack nack = null;
+			synchronized (in) {
+				boolean gap = !in.early.isEmpty();
+				if (in.owed || gap) {
+					nack = in.nack(p.process_id, now);
+				}
+			}
+			if (nack != null) {
+				send(i.getKey(), nack);
+			}
+		}
+		boolean freed = false;
+		for (Iterator<Map.Entry<String, Out>> i = outs.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<String, Out> e = i.next();
+			if (!p.isMember(e.getKey())) {
+				// Taken out of the group, nobody acknowledges it anymore
+				i.remove();
+				freed = true;
+				continue;
+			}
+			Out o = e.getValue();
+			List<Message> again = new ArrayList<>();
+			synchronized (o) {
+				for (int k = 0; k < o.size; k++) {
+					Entry en = o.entries[(o.head + k) & o.mask];
+					if (en.sent != 0 && now - en.sent >= timeout << Math.min(en.tries, MAX_BACKOFF)) {
+						en.sent = now;
+						en.tries++;
+						again.add(en.r);
+					}
+				}
+			}
+			if (!again.isEmpty()) {
+				timeouts.addAndGet(again.size());
+				p.transmit(e.getKey(), again);
+			}
+		}
+		if (freed) {
+			synchronized (room) {
+				room.notifyAll();
+			}
+		}
+	}
+
+	private void send(int pid, Nack nack) {
+		String endpoint = p.getEndpoint(pid);
+		if (endpoint != null) {
+			nacks.incrementAndGet();
+			p.transmit(endpoint, Collections.<Message> singletonList(nack));
+		}
+	}
+
+	/**
+	 * Start a new channel to an endpoint, for a process that joins again
+	 * after a restart
+	 */
+	public void reset(String endpoint) {
+		outs.remove(endpoint);
+		synchronized (room) {
+			room.notifyAll();
+		}
+	}
+
+	/**
+	 * Wait until every destination has less than capacity messages that
+	 * were not acknowledged. Callers must not hold locks.
+	 *
+	 * @return false if interrupted or stopped while waiting
+	 */
+	public boolean awaitRoom() {
+		if (!full()) {
+			return true;
+		}
+		waits.incrementAndGet();
+		synchronized (room) {
+			while (full()) {
+				if (!running) {
+					return false;
+				}
+				try {
+					// Timed, a notify can come just before we wait
+					room.wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean full() {
+		for (Out o : outs.values()) {
+			if (o.size >= capacity) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void stop() {
+		running = false;
+		timer.shutdown();
+		synchronized (room) {
+			room.notifyAll();
+		}
+	}
+
+	public String toString() {
+		int unacked = 0;
+		for (Out o : outs.values()) {
+			unacked += o.size;
+		}
+		return String.format("%d not acknowledged, sent again %d times after a timeout and %d after a nack, %d nacks, "
+				+ "received %d duplicates and %d early, waited for room %d times", unacked, timeouts.get(), nacked.get(), nacks.get(),
+				duplicates.get(), early.get(), waits.get());
+	}
+
+	/**
+	 * A message that was not acknowledged yet
+	 */
+	private static class Entry {
+		final Reliable r;
+		/**
+		 * Time in ns it was last handed to the transport, 0 if it is still
+		 * waiting in the sender
+		 */
+		long sent = 0;
+		int tries = 0;
+
+		Entry(Reliable r) {
+			this.r = r;
+		}
+	}
+
+	/**
+	 * The channel to one destination: a ring of the messages that were not
+	 * acknowledged, the first one has number base
+	 */
+	private static class Out {
+		final long session = sessions.incrementAndGet();
+		Entry[] entries = new Entry[16];
+		int mask = 15;
+		int head = 0;
+		volatile int size = 0;
+		int base = 1;
+
+		void add(Entry e) {
+			if (size == entries.length) {
+				Entry[] bigger = new Entry[2 * entries.length];
+				for (int i = 0; i < size; i++) {
+					bigger[i] = entries[(head + i) & mask];
+				}
+				entries = bigger;
+				mask = bigger.length - 1;
+				head = 0;
+			}
+			entries[(head + size) & mask] = e;
+			size++;
+		}
+
+		/**
+		 * @return the message with number seq, or null if it was
+		 *         acknowledged or never sent
+		 */
+		Entry get(int seq) {
+			int i = seq - base;
+			return i < 0 || i >= size ? null : entries[(head + i) & mask];
+		}
+
+		/**
+		 * Everything up to and including seq was received
+		 */
+		void ack(int seq) {
+			while (size > 0 && base <= seq) {
+				entries[head] = null;
+				head = (head + 1) & mask;
+				size--;
+				base++;
+			}
+		}
+	}
+
+	/**
+	 * The channel from one sender
+	 */
+	private static class In {
+		long session = Long.MIN_VALUE;
+		/**
+		 * Number of the next message to hand on
+		 */
+		int next = 1;
+		/**
+		 * Messages that came before the next one, by number
+		 */
+		final Map<Integer, Message> early = new HashMap<>();
+		int highest = 0;
+		/**
+		 * Whether something came since the last acknowledgement
+		 */
+		boolean owed = false;
+		/**
+		 * Time in ns of the last nack
+		 */
+		long nacked = 0;
+
+		void reset(long session) {
+			this.session = session;
+			next = 1;
+			early.clear();
+			highest = 0;
+		}
+
+		/**
+		 * @return a nack from process pid for everything up to the next one
+		 *         and the gaps after it
+		 */
+		Nack nack(int pid, long now) {
+			int n = 0;
+			int[] missing = new int[Math.min(MAX_NACKED, Math.max(0, highest - next))];
+			for (int seq = next; seq < highest && n < missing.length; seq++) {
+				if (!early.containsKey(seq)) {
+					missing[n++] = seq;
+				}
+			}
+			owed = false;
+			nacked = now;
+			return new Nack(pid, session, next - 1, Arrays.copyOf(missing, n));
+		}
+	}
+}
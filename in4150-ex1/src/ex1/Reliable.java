@@ -0,0 +1,27 @@
+package ex1;
+
+/**
+ * A message with its number on the channel from its sender to one process,
+ * for the reliability layer
+ */
+public class Reliable extends Message {
+	private static final long serialVersionUID = -4603981652480210127L;
+
+	/**
+	 * Identifies the channel, a new one starts at number 1 again
+	 */
+	public final long session;
+	public final int seq;
+	public final Message message;
+
+	public Reliable(int sender_process, long session, int seq, Message m) {
+		super(sender_process, m.sender_time);
+		this.session = session;
+		this.seq = seq;
+		this.message = m;
+	}
+
+	public String toString() {
+		return String.format("REL[%d,%d,%s]", sender_process, seq, message.toString());
+	}
+}
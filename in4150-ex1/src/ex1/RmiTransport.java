@@ -0,0 +1,82 @@
+package ex1;
+
+import java.io.IOException;
+import java.rmi.*;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+
+/**
+ * Sends messages with Java RMI. Processes are bound in the registry under
+ * their RMI string by TBS_Main, the stubs are cached.
+ */
+public class RmiTransport implements Transport {
+	private final StubCache stubs;
+	private Process p;
+
+	public RmiTransport(Registry r) {
+		this.stubs = new StubCache(r);
+	}
+
+	/**
+	 * Export p, so it can be bound in the registry
+	 */
+	@Override
+	public void start(Process p) throws RemoteException {
+		this.p = p;
+		UnicastRemoteObject.exportObject(p, 0);
+	}
+
+	/**
+	 * Send messages to one process using its cached stub. A stub that has
+	 * gone stale because the process was restarted is looked up once more.
+	 */
+	@Override
+	public void send(String p_rmi, List<Message> ms) throws IOException {
+		boolean cached = stubs.isCached(p_rmi);
+		try {
+			call(stubs.get(p_rmi), ms);
+		} catch (NoSuchObjectException | ConnectException e) {
+			stubs.invalidate(p_rmi);
+			if (!cached) {
+				throw e;
+			}
+			// The call never reached the process, so it is safe to try again
+			try {
+				call(stubs.get(p_rmi), ms);
+			} catch (NotBoundException e2) {
+				throw new RemoteException(p_rmi + " is not bound", e2);
+			}
+		} catch (RemoteException e) {
+			stubs.invalidate(p_rmi);
+			throw e;
+		} catch (NotBoundException e) {
+			stubs.invalidate(p_rmi);
+			throw new RemoteException(p_rmi + " is not bound", e);
+		}
+	}
+
+	private static void call(Process_RMI p, List<Message> ms) throws RemoteException {
+		if (ms.size() == 1) {
+			p.receive(ms.get(0));
+		} else {
+			p.receiveBatch(ms);
+		}
+	}
+
+	@Override
+	public void stop() {
+		if (p == null) {
+			return;
+		}
+		try {
+			UnicastRemoteObject.unexportObject(p, true);
+		} catch (NoSuchObjectException e) {
+			// Not exported anymore
+		}
+	}
+
+	public String toString() {
+		return "RMI, stub cache: " + stubs.toString();
+	}
+}
@@ -0,0 +1,304 @@
+package ex1;
+
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the outgoing sends of a process on a bounded pool of threads.
+ *
+ * Sends can be given a delay, which is waited out by the scheduler instead of
+ * by a sleeping thread. A full pool does not make the calling thread send:
+ * the caller can hold locks that the receiving end of the send needs when it
+ * is the same process. Instead, callers that start new messages wait for
+ * room with awaitRoom() first, while they don't hold any locks, so no more
+ * than max_queued sends plus the sends caused by messages in flight wait in
+ * the pool.
+ *
+ * A FIFO sender keeps the sends to the same destination in the order they
+ * were made, a send then waits for both its own delay and all earlier sends
+ * to that destination.
+ */
+public class Sender {
+	private final ScheduledThreadPoolExecutor pool;
+	/**
+	 * Number of sends that are waiting in the pool
+	 */
+	private final AtomicInteger queued = new AtomicInteger(0);
+	/**
+	 * Monitor for callers waiting in awaitRoom()
+	 */
+	private final Object room = new Object();
+	private final int max_queued;
+	/**
+	 * Whether sends to the same destination stay in order
+	 */
+	private final boolean fifo;
+	/**
+	 * Destination -> sends waiting for it, only used for a FIFO sender
+	 */
+	private final ConcurrentMap<Object, Lane> lanes = new ConcurrentHashMap<>();
+
+	/**
+	 * Number of times a caller had to wait for room
+	 */
+	private final AtomicInteger waits = new AtomicInteger(0);
+
+	/**
+	 * @param name
+	 *            name of the threads in the pool
+	 * @param threads
+	 *            number of threads in the pool
+	 * @param max_queued
+	 *            number of sends waiting in the pool at which new messages
+	 *            have to wait
+	 */
+	public Sender(String name, int threads, int max_queued) {
+		this(name, threads, max_queued, false);
+	}
+
+	/**
+	 * @param name
+	 *            name of the threads in the pool
+	 * @param threads
+	 *            number of threads in the pool
+	 * @param max_queued
+	 *            number of sends waiting in the pool at which new messages
+	 *            have to wait
+	 * @param fifo
+	 *            keep the sends to a destination in order
+	 */
+	public Sender(final String name, int threads, int max_queued, boolean fifo) {
+		if (threads < 1 || max_queued < 1) {
+			throw new IllegalArgumentException("A sender needs at least one thread and one queue slot");
+		}
+		this.max_queued = max_queued;
+		this.fifo = fifo;
+		this.pool = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+			private final AtomicInteger n = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + n.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Execute a send
+	 *
+	 * @param destination
+	 *            where the send goes to, sends to the same destination are
+	 *            kept in order by a FIFO sender
+	 * @param send
+	 *            the send to execute
+	 * @param delay
+	 *            time in ms to wait before executing the send
+	 * @return false if the sender was stopped and the send was not executed
+	 */
+	public boolean send(Object destination, final Runnable send, int delay) {
+		if (pool.isShutdown()) {
+			return false;
+		}
+		if (fifo) {
+			return sendInOrder(destination, send, delay);
+		}
+		queued.incrementAndGet();
+		try {
+			pool.schedule(new Runnable() {
+				public void run() {
+					try {
+						send.run();
+					} finally {
+						done();
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Stopped in the meantime
+			done();
+			return false;
+		}
+		return true;
+	}
+
+	private boolean sendInOrder(Object destination, Runnable send, int delay) {
+		queued.incrementAndGet();
+		Lane lane = lanes.get(destination);
+		if (lane == null) {
+			Lane l = new Lane();
+			lane = lanes.putIfAbsent(destination, l);
+			if (lane == null) {
+				lane = l;
+			}
+		}
+		if (!lane.add(new Send(send, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay)))) {
+			done();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A send has left the pool
+	 */
+	private void done() {
+		if (queued.decrementAndGet() == max_queued - 1) {
+			synchronized (room) {
+				room.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Wait until there are less than max_queued sends waiting in the pool.
+	 * Callers must not hold locks the pool threads could need.
+	 *
+	 * @return false if interrupted or stopped while waiting
+	 */
+	public boolean awaitRoom() {
+		if (queued.get() < max_queued) {
+			return true;
+		}
+		waits.incrementAndGet();
+		synchronized (room) {
+			while (queued.get() >= max_queued) {
+				if (pool.isShutdown()) {
+					return false;
+				}
+				try {
+					// Timed, a notify can come just before we wait
+					room.wait(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of sends waiting in the pool
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of times a caller had to wait for room
+	 */
+	public int getWaits() {
+		return waits.get();
+	}
+
+	public boolean isFifo() {
+		return fifo;
+	}
+
+	/**
+	 * Stop the sender. Sends that are already waiting are still executed, new
+	 * sends are refused.
+	 *
+	 * @param timeout
+	 *            time in ms to wait for the waiting sends
+	 * @return true if all waiting sends were executed
+	 */
+	public boolean stop(int timeout) {
+		pool.shutdown();
+		try {
+			if (pool.awaitTermination(timeout, TimeUnit.MILLISECONDS) && queued.get() == 0) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		pool.shutdownNow();
+		return false;
+	}
+
+	private static void sleep(long ms) {
+		if (ms <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+		}
+	}
+
+	/**
+	 * A send with the time it is due
+	 */
+	private static class Send {
+		final Runnable send;
+		final long due;
+
+		Send(Runnable send, long due) {
+			this.send = send;
+			this.due = due;
+		}
+	}
+
+	/**
+	 * The sends to one destination, executed in order by at most one pool
+	 * thread at a time
+	 */
+	private class Lane implements Runnable {
+		private final Queue<Send> sends = new ConcurrentLinkedQueue<>();
+		/**
+		 * Whether the lane is running or waiting in the pool
+		 */
+		private final AtomicBoolean active = new AtomicBoolean(false);
+
+		boolean add(Send s) {
+			sends.add(s);
+			if (active.compareAndSet(false, true)) {
+				try {
+					pool.execute(this);
+				} catch (RejectedExecutionException e) {
+					sends.remove(s);
+					active.set(false);
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				Send s = sends.peek();
+				if (s == null) {
+					active.set(false);
+					// A send could have been added after the peek
+					if (sends.isEmpty() || !active.compareAndSet(false, true)) {
+						return;
+					}
+					continue;
+				}
+				long wait = s.due - System.nanoTime();
+				if (wait > 0) {
+					try {
+						// Come back when it's due instead of holding the thread
+						pool.schedule(this, wait, TimeUnit.NANOSECONDS);
+						return;
+					} catch (RejectedExecutionException e) {
+						// Stopping, finish the waiting sends in this thread
+						sleep(TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+						continue;
+					}
+				}
+				sends.poll();
+				try {
+					s.send.run();
+				} finally {
+					done();
+				}
+			}
+		}
+	}
+}
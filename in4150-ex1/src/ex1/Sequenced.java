@@ -0,0 +1,27 @@
+package ex1;
+
+/**
+ * A message with the sequence number it is delivered at
+ */
+public class Sequenced extends Message {
+	private static final long serialVersionUID = -5237101946373349226L;
+
+	/**
+	 * Position in the total order
+	 */
+	public final int seq;
+	/**
+	 * The message that is delivered
+	 */
+	public final Message message;
+
+	public Sequenced(int sender_process, int time, int seq, Message m) {
+		super(sender_process, time);
+		this.seq = seq;
+		this.message = m;
+	}
+
+	public String toString() {
+		return String.format("SEQ[%d,%d,%d,%s]", sender_process, sender_time, seq, message.toString());
+	}
+}
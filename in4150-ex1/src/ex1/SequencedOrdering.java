@@ -0,0 +1,59 @@
+package ex1;
+
+import java.util.*;
+
+/**
+ * Base of the orderings where every message gets a sequence number. Messages
+ * are held back until all messages before them have been delivered.
+ */
+public abstract class SequencedOrdering implements Ordering {
+	protected final Process p;
+
+	/**
+	 * Sequence number -> received message that can't be delivered yet
+	 */
+	private final Map<Integer, Message> holdback = new HashMap<>();
+	/**
+	 * Sequence number of the next message to deliver
+	 */
+	private int next_delivery = 0;
+
+	public SequencedOrdering(Process p) {
+		this.p = p;
+	}
+
+	/**
+	 * Deliver a sequenced message and everything after it that was waiting
+	 * for it
+	 */
+	protected synchronized void sequenced(Sequenced s) {
+		if (s.seq < next_delivery || holdback.containsKey(s.seq)) {
+			p.logwarn("Received " + s.toString() + " twice");
+			return;
+		}
+		holdback.put(s.seq, s.message);
+		List<Message> run = new ArrayList<>();
+		Message m;
+		while ((m = holdback.remove(next_delivery)) != null) {
+			next_delivery++;
+			run.add(m);
+		}
+		if (!run.isEmpty()) {
+			p.deliverToTarget(run);
+		}
+	}
+
+	@Override
+	public synchronized int pending() {
+		return holdback.size();
+	}
+
+	/**
+	 * @return all process ids in order
+	 */
+	protected List<Integer> processIds() {
+		List<Integer> pids = new ArrayList<>(p.getProcessIds());
+		Collections.sort(pids);
+		return pids;
+	}
+}
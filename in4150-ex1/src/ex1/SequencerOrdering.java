@@ -0,0 +1,53 @@
+package ex1;
+
+import java.util.Collections;
+
+/**
+ * Total ordering with a fixed sequencer, the process with the lowest id.
+ * Messages are sent to the sequencer, which broadcasts them with a sequence
+ * number. This takes N+1 messages per broadcast instead of N+N^2, but all
+ * messages go through the sequencer.
+ */
+public class SequencerOrdering extends SequencedOrdering {
+	/**
+	 * Next sequence number to hand out, only used by the sequencer
+	 */
+	private int next_seq = 0;
+
+	public SequencerOrdering(Process p) {
+		super(p);
+	}
+
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void broadcast(Message m) {
+		int sequencer = sequencer();
+		if (sequencer == p.process_id) {
+			sequence(m);
+		} else {
+			p.send(m, sequencer, 0);
+		}
+	}
+
+	@Override
+	public void receive(Message m) {
+		if (m instanceof Sequenced) {
+			sequenced((Sequenced) m);
+		} else if (sequencer() == p.process_id) {
+			sequence(m);
+		} else {
+			p.logerr("Received " + m.toString() + " but I am not the sequencer");
+		}
+	}
+
+	private synchronized void sequence(Message m) {
+		p.send(new Sequenced(p.process_id, p.tick(), next_seq++, m));
+	}
+
+	private int sequencer() {
+		return Collections.min(p.getProcessIds());
+	}
+}
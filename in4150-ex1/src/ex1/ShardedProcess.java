@@ -0,0 +1,144 @@
+package ex1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A node that is a process in several broadcast groups, each with its own
+ * clock, message queue and acknowledgements. Messages are broadcast in the
+ * group their key hashes to, so the groups order their messages
+ * independently and in parallel. Messages with the same key are in one group
+ * and are delivered in the same order everywhere, messages with different
+ * keys only are if the deliveries are merged with setMergedTarget().
+ *
+ * Every node has to be in every group, with the same process id.
+ */
+public class ShardedProcess {
+	public final int process_id;
+	private final List<Process> groups;
+	private MergedTarget merged;
+
+	/**
+	 * @param groups
+	 *            the processes of this node, one per group, with process id
+	 *            process_id
+	 */
+	public ShardedProcess(int process_id, List<Process> groups) {
+		if (groups.isEmpty()) {
+			throw new IllegalArgumentException("A node has to be in at least one group");
+		}
+		for (Process p : groups) {
+			if (p.process_id != process_id) {
+				throw new IllegalArgumentException("Process " + p.process_id + " is not process " + process_id);
+			}
+		}
+		this.process_id = process_id;
+		this.groups = Collections.unmodifiableList(new ArrayList<>(groups));
+	}
+
+	/**
+	 * @return the group messages with key are broadcast in
+	 */
+	public int groupOf(Object key) {
+		return (key.hashCode() & 0x7fffffff) % groups.size();
+	}
+
+	/**
+	 * Broadcast a new message in the group of key
+	 * @return the message, or null if interrupted while waiting for room
+	 */
+	public Message sendNewMessage(Object key) {
+		return sendNewMessage(key, null);
+	}
+
+	/**
+	 * Broadcast a new message carrying data in the group of key
+	 * @param data the data of the message, or null for a plain message
+	 * @return the message, or null if interrupted while waiting for room
+	 */
+	public Message sendNewMessage(Object key, byte[] data) {
+		return groups.get(groupOf(key)).sendNewMessage(data);
+	}
+
+	public Process getGroup(int g) {
+		return groups.get(g);
+	}
+
+	public List<Process> getGroups() {
+		return groups;
+	}
+
+	/**
+	 * Deliver the messages of every group to t as each group orders them,
+	 * without an order between the groups
+	 */
+	public synchronized void setTarget(final Target t) {
+		stopMerge();
+		for (Process p : groups) {
+			p.setTarget(new Target() {
+				@Override
+				public void deliver(int deliveringPID, Message m) {
+					// Left over from a merge
+					if (!(m instanceof NullMessage)) {
+						t.deliver(deliveringPID, m);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Deliver the messages of all groups to t in one total order, the same
+	 * at every node. Only for groups ordering with acknowledgements over
+	 * FIFO senders.
+	 *
+	 * @param tick
+	 *            time in ms between null messages in groups that hold the
+	 *            order up
+	 */
+	public synchronized void setMergedTarget(Target t, int tick) {
+		for (Process p : groups) {
+			if (p.getOrdering() != null) {
+				throw new IllegalStateException("Merging needs every group to order with acknowledgements");
+			}
+		}
+		stopMerge();
+		merged = new MergedTarget(this, t, tick);
+		for (int g = 0; g < groups.size(); g++) {
+			groups.get(g).setTarget(merged.forGroup(g));
+		}
+	}
+
+	private void stopMerge() {
+		if (merged != null) {
+			merged.stop();
+			merged = null;
+		}
+	}
+
+	public void start() {
+		for (Process p : groups) {
+			p.start();
+		}
+	}
+
+	public synchronized void stop() {
+		stopMerge();
+		for (Process p : groups) {
+			p.stop();
+		}
+	}
+
+	public synchronized String status() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Status of node %d, %d groups:\n", process_id, groups.size()));
+		if (merged != null) {
+			sb.append(String.format("\tmerge: %s\n", merged.toString()));
+		}
+		for (int g = 0; g < groups.size(); g++) {
+			sb.append(String.format("Group %d: %s", g, groups.get(g).status()));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,31 @@
+package ex1;
+
+import java.util.Arrays;
+
+/**
+ * A message with the vector timestamp it was broadcast at
+ */
+public class Stamped extends Message {
+	private static final long serialVersionUID = 3312468214530857146L;
+
+	/**
+	 * Number of messages of every process, in the order of the process ids,
+	 * that were delivered before this one was broadcast. The entry of the
+	 * sender is the number of this message among its own.
+	 */
+	public final int[] vector;
+	/**
+	 * The message that is delivered
+	 */
+	public final Message message;
+
+	public Stamped(int sender_process, int time, int[] vector, Message m) {
+		super(sender_process, time);
+		this.vector = vector;
+		this.message = m;
+	}
+
+	public String toString() {
+		return String.format("VT[%d,%d,%s,%s]", sender_process, sender_time, Arrays.toString(vector), message.toString());
+	}
+}
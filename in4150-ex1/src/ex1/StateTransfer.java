@@ -0,0 +1,50 @@
+package ex1;
+
+import java.util.List;
+
+/**
+ * State of a process for a joining process, as it was when it took the
+ * joining process into the group, plus what it received from the others
+ * before they did.
+ */
+public class StateTransfer extends Message {
+	private static final long serialVersionUID = -1829440113390584412L;
+
+	/**
+	 * Last delivered message, or null
+	 */
+	public final Message last;
+	/**
+	 * The messages that were not delivered yet, in order
+	 */
+	public final List<Message> messages;
+	/**
+	 * For every message acks were kept for: its id, then the processes that
+	 * acknowledged it
+	 */
+	public final List<long[]> acked;
+	/**
+	 * Messages and acks received from the others before their marker
+	 */
+	public final List<Message> channel;
+	/**
+	 * Whether the joining process was in the group before, then it has to
+	 * acknowledge everything again
+	 */
+	public final boolean rejoin;
+
+	public StateTransfer(int sender_process, int time, Message last, List<Message> messages, List<long[]> acked, List<Message> channel,
+			boolean rejoin) {
+		super(sender_process, time);
+		this.last = last;
+		this.messages = messages;
+		this.acked = acked;
+		this.channel = channel;
+		this.rejoin = rejoin;
+	}
+
+	public String toString() {
+		return String.format("STATE[%d,%d,%s,%d messages,%d acked,%d in channels%s]", sender_process, sender_time, last, messages.size(), acked.size(),
+				channel.size(), rejoin ? ",rejoin" : "");
+	}
+}
@@ -0,0 +1,84 @@
+package ex1;
+
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.Registry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of remote process stubs, so the RMI registry only has to be asked
+ * once per process instead of on every send.
+ *
+ * Stubs are looked up the first time they are needed and stay cached until
+ * they are invalidated because a call on them failed.
+ */
+public class StubCache {
+	private final Registry rmireg;
+
+	/**
+	 * RMI string -> stub
+	 */
+	private final ConcurrentMap<String, Process_RMI> stubs = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong invalidations = new AtomicLong(0);
+
+	public StubCache(Registry r) {
+		this.rmireg = r;
+	}
+
+	/**
+	 * Get the stub of a process, looking it up in the registry if it is not
+	 * cached
+	 *
+	 * @param p_rmi
+	 *            RMI string of the process
+	 */
+	public Process_RMI get(String p_rmi) throws RemoteException, NotBoundException {
+		Process_RMI stub = stubs.get(p_rmi);
+		if (stub != null) {
+			hits.incrementAndGet();
+			return stub;
+		}
+		misses.incrementAndGet();
+		stub = (Process_RMI) rmireg.lookup(p_rmi);
+		// If another thread looked it up at the same time, both stubs are fine
+		stubs.put(p_rmi, stub);
+		return stub;
+	}
+
+	/**
+	 * Check whether a stub is cached, without counting a hit or miss
+	 */
+	public boolean isCached(String p_rmi) {
+		return stubs.containsKey(p_rmi);
+	}
+
+	/**
+	 * Forget the stub of a process, the next get will look it up again
+	 */
+	public void invalidate(String p_rmi) {
+		if (stubs.remove(p_rmi) != null) {
+			invalidations.incrementAndGet();
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+	public String toString() {
+		return String.format("%d hits, %d misses, %d invalidations", hits.get(), misses.get(), invalidations.get());
+	}
+}
@@ -1,177 +1,735 @@
-package ex1;
-
-import java.rmi.*;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.util.*;
-
-import ex1.testcases.TestCase1;
-
-/**
- * Main class for Distributed algorithms ex. 1. Initiates processes and
- * maintains Process registry
- */
-public class TBS_Main {
-	private static final int RMI_PORT = 1099;
-	private Registry reg;
-
-	private Map<Integer, Process> localprocessmap = new HashMap<>();
-	private Map<Integer, String> processrmimap = new HashMap<>();
-	
-	private boolean running = false;
-
-	private final String remotehost;
-	private final boolean evenprocessnumbers;
-	
-	private final static int num_proc = 3;
-	
-    public static void main(String... args) throws InterruptedException {
-    	if(args.length != 2) {
-    		System.out.println("TBM_Main remote even_process_numbers={0,1}");
-    		return;
-    	}
-		new TBS_Main(args[0], Integer.parseInt(args[1])==1).run();
-	}
-
-    public TBS_Main(String remote, boolean even) {
-    	this.remotehost = remote;
-    	this.evenprocessnumbers = even;
-    }
-    
-	public void run() throws InterruptedException {
-		if ((reg = createRegistery()) == null) {
-			System.exit(1);
-		}
-    
-		int startpid;
-		int startremotepid;
-		if(evenprocessnumbers){
-			startpid = 0;
-			startremotepid = 1;
-		} else {
-			startpid = 1;
-			startremotepid = 0;
-		}
-		
-		// create the local processes
-		for(int i=0;i<num_proc;i++) {
-			// Create processes {0,2,4,...} or {1,3,5,...}
-			createLocalProcess(startpid+i);
-			//createLocalProcess(startpid+2*i);
-			// bind the other (remote) processes
-			//bindRemoteProcess(startremotepid+2*i);
-		}
-		
-		System.out.println("Processes started, now accepting commands:");
-		Scanner in = new Scanner(System.in);
-		console: while(true) {
-			String line = in.nextLine();
-			switch(line) {
-			case "exit":
-				break console;
-			case "reset":
-				for(Process p : localprocessmap.values()) {
-					p.setClock(0);
-				}
-				break;
-			case "test1":
-				TestCase1 tc1 = new TestCase1(localprocessmap);
-				setTarget(tc1);
-				tc1.start();
-				break;
-			default:
-				try {
-					localprocessmap.get(Integer.parseInt(line)).sendNewMessage();
-				}
-				catch(NumberFormatException e) {
-					System.out.println("Invalid number");
-				}
-				catch(NullPointerException e) {
-					System.out.println("Not a local process");
-				}
-				catch(Exception e) {
-					e.printStackTrace();
-				}
-			}
-		}
-		in.close();
-		stop();
-	}
-
-	private void setTarget(Target t) {
-		for(Process p: localprocessmap.values()) {
-			p.setTarget(t);
-		}
-	}
-	
-	private void createLocalProcess(int pid) {
-		String rmiid = "rmi://localhost:" + RMI_PORT + "/p_" + pid;
-		try {
-            processrmimap.put(pid, rmiid);
-            Process p = new Process(pid,  Collections.unmodifiableMap(processrmimap), reg);
-            localprocessmap.put(pid, p);
-            reg.bind(rmiid, p);
-        } catch (RemoteException |AlreadyBoundException e) {
-            System.err.println("Error registering process " + pid + " to RMI registery");
-            e.printStackTrace();
-            System.exit(1);
-        }
-	}
-	
-	private void bindRemoteProcess(int pid) {
-		processrmimap.put(pid, "rmi://" + remotehost + ":" + RMI_PORT + "/p_" + pid);
-	}
-
-    private void stop() {
-		running = false;
-		// Stop processes
-		for(Process p : localprocessmap.values()) {
-			p.stop();
-		}
-		// Unbind RMI
-		try {
-			for(String rmi_p : reg.list()) {
-				try {
-					reg.unbind(rmi_p);
-				} catch (RemoteException | NotBoundException e) {
-					System.err.println("Could not unbind " + rmi_p);
-				}
-			}
-		} catch (RemoteException e) {
-			System.err.println("Could not access RMI registry to stop processes");
-			e.printStackTrace();
-		}
-	}
-	
-	private static Registry createRegistery() {
-        // Create and install a security manager if neccesary
-		if (System.getSecurityManager() == null) {
-			System.setSecurityManager(new SecurityManager());
-	    }
-		
-        Registry reg;
-        // Create registry if neccesary
-		try {
-			LocateRegistry.createRegistry(RMI_PORT);
-        } catch(Exception e) {
-            // Registry already exists
-        	System.out.println("A RMI Registery was already running");
-        }
-        try {
-            reg = LocateRegistry.getRegistry(RMI_PORT);
-		} catch (RemoteException e) {
-			System.err.println("Could not obtain or create RMI registry");
-			e.printStackTrace();
-			return null;
-		}
-        
-        return reg;
-	}	
-	
-	@Override
-	protected void finalize() {
-		if(running) {
-			stop();
-		}
-	}
-}
+package ex1;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.rmi.*;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ex1.kv.ReplicatedStore;
+import ex1.testcases.Benchmark;
+import ex1.testcases.KVBenchmark;
+import ex1.testcases.ShardBenchmark;
+import ex1.testcases.TestCase1;
+
+/**
+ * Main class for Distributed algorithms ex. 1. Initiates processes and
+ * maintains Process registry
+ */
+public class TBS_Main {
+	private static final int RMI_PORT = 1099;
+	/**
+	 * Port of process 0 on the socket transport, process n listens on
+	 * NIO_PORT + n, -Dex1.nio.port=port
+	 */
+	private static final int NIO_PORT = Integer.getInteger("ex1.nio.port", 7000);
+	private Registry reg;
+
+	private Map<Integer, Process> localprocessmap = new HashMap<>();
+	/**
+	 * Process id -> RMI string or host:port endpoint
+	 */
+	private Map<Integer, String> processrmimap = new HashMap<>();
+	/**
+	 * RMI string or endpoint -> process in this JVM, for the local transports
+	 */
+	private ConcurrentMap<String, Process> localendpoints = new ConcurrentHashMap<>();
+	/**
+	 * Process id -> endpoint in every group, group 0 is processrmimap
+	 */
+	private List<Map<Integer, String>> groupendpoints = new ArrayList<>();
+	/**
+	 * Process id -> local node with a process in every group
+	 */
+	private Map<Integer, ShardedProcess> localshards = new HashMap<>();
+	/**
+	 * Process id -> replicated store of the local process, once the kv
+	 * benchmark ran
+	 */
+	private Map<Integer, ReplicatedStore> stores = new HashMap<>();
+	
+	private boolean running = false;
+
+	private final String remotehost;
+	private final boolean evenprocessnumbers;
+	
+	private final static int num_proc = 3;
+	
+	/**
+	 * Size of the sender pool of every process, -Dex1.sender.threads=n
+	 */
+	private final static int sender_threads = Integer.getInteger("ex1.sender.threads", Process.DEFAULT_SENDER_THREADS);
+	/**
+	 * Maximum number of waiting sends of every process, -Dex1.sender.queue=n
+	 */
+	private final static int sender_queue = Integer.getInteger("ex1.sender.queue", Process.DEFAULT_SENDER_QUEUE);
+	/**
+	 * Maximum number of messages sent to a process in one call, -Dex1.batch=n
+	 */
+	private final static int max_batch = Integer.getInteger("ex1.batch", 1);
+	/**
+	 * Maximum time in ms a message waits to be batched with others, -Dex1.linger=ms
+	 */
+	private final static int linger = Integer.getInteger("ex1.linger", 0);
+	/**
+	 * Time in ms acknowledgements are held back to be sent together, -Dex1.ackwindow=ms
+	 */
+	private final static int ack_window = Integer.getInteger("ex1.ackwindow", 0);
+	/**
+	 * How processes keep track of acknowledgements, -Dex1.acks={exact,watermark}
+	 */
+	private final static AckTracker.MODE ack_mode = AckTracker.MODE.valueOf(System.getProperty("ex1.acks", "exact").toUpperCase());
+	/**
+	 * Number of runs of delivered messages waiting for the target, 0 to deliver
+	 * on the receiving thread, -Dex1.delivery.queue=n
+	 */
+	private final static int delivery_queue = Integer.getInteger("ex1.delivery.queue", 0);
+	/**
+	 * Whether processes handle received messages on one event loop thread,
+	 * -Dex1.eventloop=true
+	 */
+	private final static boolean event_loop = Boolean.getBoolean("ex1.eventloop");
+	/**
+	 * How processes order messages, -Dex1.ordering={acks,sequencer,token,causal}
+	 */
+	private final static Ordering.MODE ordering_mode = Ordering.MODE.valueOf(System.getProperty("ex1.ordering", "acks").toUpperCase());
+	/**
+	 * How processes send messages to each other, -Dex1.transport={rmi,nio}
+	 */
+	private final static Transport.MODE transport_mode = Transport.MODE.valueOf(System.getProperty("ex1.transport", "rmi").toUpperCase());
+	/**
+	 * Whether processes in this JVM hand messages to each other directly
+	 * instead of over the transport, -Dex1.local=true
+	 */
+	private final static boolean local_delivery = Boolean.getBoolean("ex1.local");
+	/**
+	 * Directory the processes keep their delivery logs in, they recover from
+	 * them when restarted, -Dex1.log=dir
+	 */
+	private final static String log_dir = System.getProperty("ex1.log");
+	/**
+	 * Time in ms commits to the delivery logs are gathered before forcing
+	 * them to disk, -Dex1.log.sync=ms
+	 */
+	private final static int log_sync = Integer.getInteger("ex1.log.sync", 0);
+	/**
+	 * Maximum number of undelivered own broadcasts of every process, 0 for
+	 * no limit, -Dex1.window=n
+	 */
+	private final static int window = Integer.getInteger("ex1.window", 0);
+	/**
+	 * Number of groups every process is in, messages are spread over them
+	 * by key, -Dex1.groups=n. Group g of process n is p_n_gg on RMI and
+	 * listens on NIO_PORT + 100 * g + n on the socket transport.
+	 */
+	private final static int groups = Integer.getInteger("ex1.groups", 1);
+	/**
+	 * Maximum age in ms of the data a replicated store reads locally, 0 to
+	 * make every read linearizable, -Dex1.kv.staleness=ms
+	 */
+	private final static int kv_staleness = Integer.getInteger("ex1.kv.staleness", 10);
+	/**
+	 * Number of commands between snapshots of a replicated store,
+	 * -Dex1.kv.snapshot=n
+	 */
+	private final static int kv_snapshot = Integer.getInteger("ex1.kv.snapshot", 10000);
+	/**
+	 * Keep the sends to every process in order, processes can only join
+	 * then, -Dex1.fifo=true. Always on with watermarks, a delivery log or
+	 * several groups.
+	 */
+	private final static boolean fifo = Boolean.getBoolean("ex1.fifo") || ack_mode == AckTracker.MODE.WATERMARK || log_dir != null || groups > 1;
+	/**
+	 * Maximum time in ms a process waits for its join to complete
+	 */
+	private static final int JOIN_TIMEOUT = 30000;
+	/**
+	 * Take a process out of the group as soon as sending to it fails,
+	 * -Dex1.removefailed=true. Only with ordering with acks.
+	 */
+	private final static boolean remove_failed = Boolean.getBoolean("ex1.removefailed");
+	/**
+	 * Number, acknowledge and send again the messages between processes, so
+	 * the channels are reliable and FIFO over a lossy transport,
+	 * -Dex1.reliable=true
+	 */
+	private final static boolean reliable = Boolean.getBoolean("ex1.reliable");
+	/**
+	 * Time in ms before a message that was not acknowledged is sent again,
+	 * -Dex1.reliable.timeout=ms
+	 */
+	private final static int reliable_timeout = Integer.getInteger("ex1.reliable.timeout", 100);
+	/**
+	 * Maximum number of messages not acknowledged per process,
+	 * -Dex1.reliable.buffer=n
+	 */
+	private final static int reliable_buffer = Integer.getInteger("ex1.reliable.buffer", 4096);
+	/**
+	 * Chances the transport loses, duplicates or reorders a message, to test
+	 * with, -Dex1.loss=0.01 -Dex1.duplicate=0.01 -Dex1.reorder=0.01
+	 */
+	private final static double loss = Double.parseDouble(System.getProperty("ex1.loss", "0"));
+	private final static double duplicate = Double.parseDouble(System.getProperty("ex1.duplicate", "0"));
+	private final static double reorder = Double.parseDouble(System.getProperty("ex1.reorder", "0"));
+	
+    public static void main(String... args) throws InterruptedException {
+    	if(args.length != 2) {
+    		System.out.println("TBM_Main remote even_process_numbers={0,1}");
+    		return;
+    	}
+		new TBS_Main(args[0], Integer.parseInt(args[1])==1).run();
+	}
+
+    public TBS_Main(String remote, boolean even) {
+    	this.remotehost = remote;
+    	this.evenprocessnumbers = even;
+    	groupendpoints.add(processrmimap);
+    	for(int g = 1; g < groups; g++) {
+    		groupendpoints.add(new HashMap<Integer, String>());
+    	}
+    }
+    
+	public void run() throws InterruptedException {
+		// The socket transport doesn't need the registry
+		if (transport_mode == Transport.MODE.RMI && (reg = createRegistery()) == null) {
+			System.exit(1);
+		}
+    
+		int startpid;
+		int startremotepid;
+		if(evenprocessnumbers){
+			startpid = 0;
+			startremotepid = 1;
+		} else {
+			startpid = 1;
+			startremotepid = 0;
+		}
+		
+		// create the local processes
+		for(int i=0;i<num_proc;i++) {
+			// Create processes {0,2,4,...} or {1,3,5,...}
+			createLocalProcess(startpid+i);
+			//createLocalProcess(startpid+2*i);
+			// bind the other (remote) processes
+			//bindRemoteProcess(startremotepid+2*i);
+		}
+		for(ShardedProcess node : localshards.values()) {
+			node.start();
+		}
+		
+		System.out.println("Processes started, now accepting commands:");
+		Scanner in = new Scanner(System.in);
+		console: while(true) {
+			String line = in.nextLine();
+			switch(line.split(" ")[0]) {
+			case "exit":
+				break console;
+			case "reset":
+				for(Process p : localprocessmap.values()) {
+					p.setClock(0);
+				}
+				break;
+			case "status":
+				String[] status_args = line.split(" ");
+				if(status_args.length < 2 || status_args[1].equals("all")) {
+					for(ShardedProcess node : localshards.values()) {
+						System.out.println(status(node));
+					}
+				} else {
+					try {
+						System.out.println(status(localshards.get(Integer.parseInt(status_args[1]))));
+					}
+					catch(NumberFormatException e) {
+						System.out.println("Invalid number");
+					}
+					catch(NullPointerException e) {
+						System.out.println("Not a local process");
+					}
+				}
+				break;
+			case "stats":
+				// stats [pid|all] [reset]
+				List<String> stats_args = new ArrayList<>(Arrays.asList(line.split(" ")));
+				boolean reset = stats_args.remove("reset");
+				Collection<Process> ps;
+				if(stats_args.size() < 2 || stats_args.get(1).equals("all")) {
+					ps = localprocessmap.values();
+				} else {
+					try {
+						Process p = localprocessmap.get(Integer.parseInt(stats_args.get(1)));
+						if(p == null) {
+							System.out.println("Not a local process");
+							break;
+						}
+						ps = Collections.singleton(p);
+					}
+					catch(NumberFormatException e) {
+						System.out.println("Invalid number");
+						break;
+					}
+				}
+				for(Process p : ps) {
+					System.out.println(String.format("Statistics of Process %d:\n%s", p.process_id, p.getStats().toString()));
+					if(reset) {
+						p.getStats().reset();
+					}
+				}
+				break;
+			case "join":
+				// join pid [peer]
+				String[] join_args = line.split(" ");
+				try {
+					joinProcess(Integer.parseInt(join_args[1]), join_args.length > 2 ? Integer.parseInt(join_args[2]) : -1);
+				}
+				catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.out.println("join pid [peer]");
+				}
+				break;
+			case "crash":
+				// crash pid, stops a local process without telling the others
+				try {
+					crashProcess(Integer.parseInt(line.split(" ")[1]));
+				}
+				catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.out.println("crash pid");
+				}
+				break;
+			case "remove":
+				// remove pid, takes a process out of the group
+				try {
+					int removed = Integer.parseInt(line.split(" ")[1]);
+					for(Process p : localprocessmap.values()) {
+						if(p.process_id != removed) {
+							p.remove(removed);
+							break;
+						}
+					}
+				}
+				catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+					System.out.println("remove pid");
+				}
+				catch(IllegalStateException e) {
+					System.out.println(e.getMessage());
+				}
+				break;
+			case "truncate":
+				truncateLogs();
+				break;
+			case "bench":
+				String[] bench_args = line.split(" ");
+				Benchmark bench = new Benchmark(localprocessmap, bench_args.length > 1 ? Integer.parseInt(bench_args[1]) : 100);
+				setTarget(bench);
+				bench.start();
+				break;
+			case "shard":
+				// shard [n] [merge]
+				List<String> shard_args = new ArrayList<>(Arrays.asList(line.split(" ")));
+				boolean merge = shard_args.remove("merge");
+				new ShardBenchmark(localshards, shard_args.size() > 1 ? Integer.parseInt(shard_args.get(1)) : 100, merge).start();
+				break;
+			case "kv":
+				// kv [n] [reads%]
+				String[] kv_args = line.split(" ");
+				if(stores.isEmpty()) {
+					try {
+						for(Process p : localprocessmap.values()) {
+							stores.put(p.process_id, createStore(p));
+						}
+					} catch (IOException e) {
+						System.err.println("Could not recover the replicated stores");
+						e.printStackTrace();
+						stores.clear();
+						break;
+					}
+				}
+				for(Map.Entry<Integer, ReplicatedStore> e : stores.entrySet()) {
+					localprocessmap.get(e.getKey()).setTarget(e.getValue());
+				}
+				new KVBenchmark(stores, kv_args.length > 1 ? Integer.parseInt(kv_args[1]) : 1000, 1000,
+						kv_args.length > 2 ? Integer.parseInt(kv_args[2]) / 100.0 : 0.9).start();
+				break;
+			case "test1":
+				// test1 [soak [n]], the soak test broadcasts n messages from
+				// every process without the random delays
+				String[] test_args = line.split(" ");
+				TestCase1 tc1;
+				if(test_args.length > 1 && test_args[1].equals("soak")) {
+					tc1 = new TestCase1(localprocessmap, test_args.length > 2 ? Integer.parseInt(test_args[2]) : 100000);
+				} else {
+					tc1 = new TestCase1(localprocessmap);
+				}
+				setTarget(tc1.getTarget());
+				tc1.start();
+				break;
+			default:
+				try {
+					localprocessmap.get(Integer.parseInt(line)).sendNewMessage();
+				}
+				catch(NumberFormatException e) {
+					System.out.println("Invalid number");
+				}
+				catch(NullPointerException e) {
+					System.out.println("Not a local process");
+				}
+				catch(Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		in.close();
+		stop();
+	}
+
+	private void setTarget(Target t) {
+		for(Process p: localprocessmap.values()) {
+			p.setTarget(t);
+		}
+	}
+
+	private String status(ShardedProcess node) {
+		return groups == 1 ? node.getGroup(0).status() : node.status();
+	}
+	
+	private void createLocalProcess(int pid) {
+		List<Process> ps = new ArrayList<>();
+		for(int g = 0; g < groups; g++) {
+			ps.add(createProcess(pid, g));
+		}
+		localprocessmap.put(pid, ps.get(0));
+		localshards.put(pid, new ShardedProcess(pid, ps));
+	}
+
+	/**
+	 * Create the process of pid in group g
+	 */
+	private Process createProcess(int pid, int g) {
+		Map<Integer, String> endpoints = groupendpoints.get(g);
+		String rmiid = "rmi://localhost:" + RMI_PORT + "/" + name(pid, g);
+		String endpoint = "localhost:" + (NIO_PORT + 100 * g + pid);
+		try {
+            Transport transport;
+            if(transport_mode == Transport.MODE.NIO) {
+                endpoints.put(pid, endpoint);
+                transport = new NioTransport(endpoint);
+            } else {
+                endpoints.put(pid, rmiid);
+                transport = new RmiTransport(reg);
+            }
+            if(local_delivery) {
+                transport = new LocalTransport(localendpoints, endpoints.get(pid), transport);
+            }
+            if(loss > 0 || duplicate > 0 || reorder > 0) {
+                transport = new LossyTransport(transport, loss, duplicate, reorder);
+            }
+            // Watermarks, recovering from the log, merging groups and joins
+            // are only correct if the sends to a process stay in order
+            Sender sender = new Sender(name(pid, g).toUpperCase() + "-sender", sender_threads, sender_queue, fifo);
+            Process p = new Process(pid,  Collections.unmodifiableMap(endpoints), transport, sender, ack_mode);
+            p.setBatching(max_batch, linger);
+            p.setAckWindow(ack_window);
+            p.setWindow(window);
+            if(reliable) {
+                p.setReliable(reliable_timeout, reliable_buffer);
+            }
+            p.setRemoveFailed(remove_failed && ordering_mode == Ordering.MODE.ACKS);
+            if(event_loop) {
+                p.setEventLoop();
+            }
+            if(delivery_queue > 0) {
+                p.setAsyncDelivery(delivery_queue);
+            }
+            p.setOrdering(ordering_mode.create(p));
+            if(log_dir != null) {
+                openLog(p, name(pid, g));
+            }
+            registerStats(p, g);
+            transport.start(p);
+            if(transport_mode == Transport.MODE.RMI) {
+                reg.bind(rmiid, p);
+            }
+            return p;
+        } catch (RemoteException |AlreadyBoundException e) {
+            System.err.println("Error registering process " + pid + " to RMI registery");
+            e.printStackTrace();
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error listening on " + endpoint + " for process " + pid);
+            e.printStackTrace();
+            System.exit(1);
+        }
+        return null;
+	}
+
+	/**
+	 * @return the name of process pid in group g, p_pid in group 0
+	 */
+	private static String name(int pid, int g) {
+		return g == 0 ? "p_" + pid : "p_" + pid + "_g" + g;
+	}
+	
+	/**
+	 * Let a new process join the running group, or a local one join again
+	 * after restarting it, with the state of peer
+	 */
+	private void joinProcess(int pid, int peer) {
+		if(!(fifo || reliable) || groups > 1 || ack_mode != AckTracker.MODE.EXACT || ordering_mode != Ordering.MODE.ACKS || log_dir != null) {
+			System.out.println("Joining needs -Dex1.fifo=true or -Dex1.reliable=true, exact acks, one group and no delivery log");
+			return;
+		}
+		if(peer < 0) {
+			for(int other : processrmimap.keySet()) {
+				if(other != pid && (peer < 0 || other < peer)) {
+					peer = other;
+				}
+			}
+		}
+		// Restart it if it is running
+		Process old = stopProcess(pid);
+		Process p = createProcess(pid, 0);
+		// Delay like the others, a test can have turned the delays off
+		Process local = localprocessmap.get(peer);
+		if(local != null) {
+			p.setRandomDelay(local.isRandomDelay());
+		}
+		long start = System.nanoTime();
+		try {
+			if(!p.join(peer, JOIN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				System.out.println("Process " + pid + " could not join in time");
+				return;
+			}
+		} catch (InterruptedException e) {
+			return;
+		}
+		localprocessmap.put(pid, p);
+		localshards.put(pid, new ShardedProcess(pid, Collections.singletonList(p)));
+		System.out.println(String.format("Process %d %s the group from process %d in %.1f ms, %d messages waiting", pid, old == null ? "joined" : "rejoined",
+				peer, (System.nanoTime() - start) / 1e6, p.getQueueDepth()));
+	}
+
+	/**
+	 * Stop a local process and forget about it
+	 * @return the process, or null if it is not local
+	 */
+	private Process stopProcess(int pid) {
+		Process old = localprocessmap.remove(pid);
+		if(old == null) {
+			return null;
+		}
+		old.stop();
+		localshards.remove(pid);
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsName(old, 0));
+		} catch (JMException e) {
+		}
+		if(reg != null) {
+			try {
+				reg.unbind(processrmimap.get(pid));
+			} catch (RemoteException | NotBoundException e) {
+			}
+		}
+		return old;
+	}
+
+	/**
+	 * Stop a local process as if it crashed, and report how long the others
+	 * take to go on without it. They only notice when they take it out of
+	 * the group, with -Dex1.removefailed=true or the remove command.
+	 */
+	private void crashProcess(int pid) {
+		if(groups > 1) {
+			System.out.println("Crashing needs one group");
+			return;
+		}
+		Map<Process, Integer> epochs = new HashMap<>();
+		for(Process p : localprocessmap.values()) {
+			if(p.process_id != pid) {
+				epochs.put(p, p.getEpoch());
+			}
+		}
+		if(stopProcess(pid) == null) {
+			System.out.println("Not a local process");
+			return;
+		}
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(JOIN_TIMEOUT);
+		for(Map.Entry<Process, Integer> e : epochs.entrySet()) {
+			while(e.getKey().getEpoch() == e.getValue()) {
+				if(System.nanoTime() > deadline) {
+					System.out.println("Process " + pid + " stopped, the others still wait for it");
+					return;
+				}
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException ex) {
+					return;
+				}
+			}
+		}
+		System.out.println(String.format("Process %d stopped, the others went on without it after %.1f ms", pid, (System.nanoTime() - start) / 1e6));
+	}
+
+	/**
+	 * Replicated store of a local process. With delivery logs its snapshots
+	 * are written next to the log, and it recovers from them.
+	 */
+	private static ReplicatedStore createStore(Process p) throws IOException {
+		if(log_dir == null) {
+			return new ReplicatedStore(p, kv_staleness, kv_snapshot);
+		}
+		return new ReplicatedStore(p, kv_staleness, kv_snapshot, new File(log_dir, name(p.process_id, 0) + ".snapshot"));
+	}
+
+	/**
+	 * Truncate the delivery logs up to the last message every local process
+	 * has delivered, or with replicated stores up to their last snapshots,
+	 * which are on disk. Assumes the local processes are the whole group.
+	 */
+	private void truncateLogs() {
+		Message upto = null;
+		for(Process p : localprocessmap.values()) {
+			ReplicatedStore store = stores.get(p.process_id);
+			Message m;
+			if(store != null) {
+				m = store.getSnapshot() == null ? null : store.getSnapshot().last;
+			} else {
+				m = p.getLastDelivered();
+			}
+			if(m == null) {
+				System.out.println(store != null ? "Not every store has a snapshot yet" : "Not every process has delivered a message yet");
+				return;
+			}
+			if(upto == null || m.compareTo(upto) < 0) {
+				upto = m;
+			}
+		}
+		for(Process p : localprocessmap.values()) {
+			try {
+				long before = p.getLog() == null ? 0 : p.getLog().size();
+				p.truncateLog(upto);
+				if(p.getLog() != null) {
+					System.out.println(String.format("Log of process %d truncated up to %s, %d -> %d bytes", p.process_id, upto, before, p.getLog().size()));
+				}
+			} catch (IOException e) {
+				System.err.println("Could not truncate the log of process " + p.process_id);
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Make the statistics of a process available over JMX, as
+	 * ex1:type=Process,id=pid, with group=g for the other groups than 0
+	 */
+	private static void registerStats(Process p, int g) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName name = statsName(p, g);
+			if(!server.isRegistered(name)) {
+				server.registerMBean(p.getStats(), name);
+			}
+		} catch (JMException e) {
+			System.err.println("Could not register the statistics of process " + p.process_id);
+		}
+	}
+
+	private static ObjectName statsName(Process p, int g) throws JMException {
+		return new ObjectName("ex1:type=Process,id=" + p.process_id + (g == 0 ? "" : ",group=" + g));
+	}
+
+	/**
+	 * Open the delivery log of a process, recovering it from what is in the
+	 * log
+	 */
+	private static void openLog(Process p, String name) {
+		File f = new File(log_dir, name + ".log");
+		try {
+			f.getParentFile().mkdirs();
+			p.setLog(new DeliveryLog(f, log_sync));
+		} catch (IOException e) {
+			System.err.println("Error opening delivery log " + f);
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	private void bindRemoteProcess(int pid) {
+		for(int g = 0; g < groups; g++) {
+			if(transport_mode == Transport.MODE.NIO) {
+				groupendpoints.get(g).put(pid, remotehost + ":" + (NIO_PORT + 100 * g + pid));
+			} else {
+				groupendpoints.get(g).put(pid, "rmi://" + remotehost + ":" + RMI_PORT + "/" + name(pid, g));
+			}
+		}
+	}
+
+    private void stop() {
+		running = false;
+		// Stop processes
+		for(ShardedProcess node : localshards.values()) {
+			node.stop();
+			for(int g = 0; g < groups; g++) {
+				try {
+					ManagementFactory.getPlatformMBeanServer().unregisterMBean(statsName(node.getGroup(g), g));
+				} catch (JMException e) {
+				}
+			}
+		}
+		if(reg == null) {
+			return;
+		}
+		// Unbind RMI
+		try {
+			for(String rmi_p : reg.list()) {
+				try {
+					reg.unbind(rmi_p);
+				} catch (RemoteException | NotBoundException e) {
+					System.err.println("Could not unbind " + rmi_p);
+				}
+			}
+		} catch (RemoteException e) {
+			System.err.println("Could not access RMI registry to stop processes");
+			e.printStackTrace();
+		}
+	}
+	
+	private static Registry createRegistery() {
+        // Create and install a security manager if neccesary
+		if (System.getSecurityManager() == null) {
+			System.setSecurityManager(new SecurityManager());
+	    }
+		
+        Registry reg;
+        // Create registry if neccesary
+		try {
+			LocateRegistry.createRegistry(RMI_PORT);
+        } catch(Exception e) {
+            // Registry already exists
+        	System.out.println("A RMI Registery was already running");
+        }
+        try {
+            reg = LocateRegistry.getRegistry(RMI_PORT);
+		} catch (RemoteException e) {
+			System.err.println("Could not obtain or create RMI registry");
+			e.printStackTrace();
+			return null;
+		}
+        
+        return reg;
+	}	
+	
+	@Override
+	protected void finalize() {
+		if(running) {
+			stop();
+		}
+	}
+}
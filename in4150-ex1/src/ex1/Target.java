@@ -1,5 +1,5 @@
-package ex1;
-
-public interface Target {
-	public void deliver(int deliveringPID, Message m);
-}
+package ex1;
+
+public interface Target {
+	public void deliver(int deliveringPID, Message m);
+}
@@ -0,0 +1,23 @@
+package ex1;
+
+/**
+ * Token that goes around the processes, only the process holding it hands
+ * out sequence numbers
+ */
+public class Token extends Message {
+	private static final long serialVersionUID = 4810459785238151880L;
+
+	/**
+	 * Next sequence number to hand out
+	 */
+	public final int next_seq;
+
+	public Token(int sender_process, int time, int next_seq) {
+		super(sender_process, time);
+		this.next_seq = next_seq;
+	}
+
+	public String toString() {
+		return String.format("TOKEN[%d,%d,%d]", sender_process, sender_time, next_seq);
+	}
+}
@@ -0,0 +1,70 @@
+package ex1;
+
+import java.util.*;
+
+/**
+ * Total ordering with a rotating token. The process holding the token gives
+ * its own waiting messages a sequence number, broadcasts them and passes the
+ * token on to the next process. This takes N messages per broadcast and
+ * spreads the sequencing work, at the cost of waiting for the token.
+ */
+public class TokenOrdering extends SequencedOrdering {
+	/**
+	 * Time in ms the token is held by a process that has nothing to send,
+	 * so an idle group doesn't spin the token around
+	 */
+	public static final int IDLE_HOLD = 10;
+
+	/**
+	 * Own messages waiting for the token
+	 */
+	private final Queue<Message> outbox = new ArrayDeque<>();
+
+	public TokenOrdering(Process p) {
+		super(p);
+	}
+
+	@Override
+	public void start() {
+		// The process with the lowest id makes the token
+		if (processIds().get(0) == p.process_id) {
+			token(new Token(p.process_id, 0, 0));
+		}
+	}
+
+	@Override
+	public synchronized void broadcast(Message m) {
+		outbox.add(m);
+	}
+
+	@Override
+	public void receive(Message m) {
+		if (m instanceof Sequenced) {
+			sequenced((Sequenced) m);
+		} else if (m instanceof Token) {
+			token((Token) m);
+		} else {
+			p.logerr("Received " + m.toString() + " without a sequence number");
+		}
+	}
+
+	private void token(Token t) {
+		int next_seq = t.next_seq;
+		boolean idle;
+		synchronized (this) {
+			idle = outbox.isEmpty();
+			while (!outbox.isEmpty()) {
+				p.send(new Sequenced(p.process_id, p.tick(), next_seq++, outbox.poll()));
+			}
+		}
+		p.send(new Token(p.process_id, p.tick(), next_seq), next(), idle ? IDLE_HOLD : 0);
+	}
+
+	/**
+	 * @return the process after this one in the ring
+	 */
+	private int next() {
+		List<Integer> pids = processIds();
+		return pids.get((pids.indexOf(p.process_id) + 1) % pids.size());
+	}
+}
@@ -0,0 +1,36 @@
+package ex1;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Carries messages between processes. Processes are known by an endpoint,
+ * whose form depends on the transport.
+ */
+public interface Transport {
+	/**
+	 * Start receiving messages for p
+	 */
+	public void start(Process p) throws IOException;
+
+	/**
+	 * Send messages to the process at an endpoint, in order
+	 */
+	public void send(String endpoint, List<Message> ms) throws IOException;
+
+	/**
+	 * Stop sending and receiving
+	 */
+	public void stop();
+
+	public enum MODE {
+		/**
+		 * Java RMI, endpoints are RMI strings
+		 */
+		RMI,
+		/**
+		 * Non-blocking sockets with binary frames, endpoints are host:port
+		 */
+		NIO
+	}
+}
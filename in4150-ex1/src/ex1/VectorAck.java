@@ -0,0 +1,81 @@
+package ex1;
+
+import java.util.List;
+
+/**
+ * Several acknowledgements sent as one message, optionally piggybacked on a
+ * new message of the sender
+ */
+public class VectorAck extends Message {
+	private static final long serialVersionUID = 2334218567396473152L;
+
+	/**
+	 * Acknowledged message senders
+	 */
+	public final int[] ackmsg_processes;
+	/**
+	 * Acknowledged message times
+	 */
+	public final int[] ackmsg_times;
+	/**
+	 * Message the acknowledgements are piggybacked on, or null
+	 */
+	public final Message message;
+
+	/**
+	 * @param sender_process
+	 *            sending process
+	 * @param time
+	 *            clock value of sending process
+	 * @param acked
+	 *            the messages that are acknowledged
+	 * @param m
+	 *            message to piggyback the acknowledgements on, or null
+	 */
+	public VectorAck(int sender_process, int time, List<Message> acked, Message m) {
+		super(sender_process, time);
+		this.ackmsg_processes = new int[acked.size()];
+		this.ackmsg_times = new int[acked.size()];
+		for (int i = 0; i < acked.size(); i++) {
+			ackmsg_processes[i] = acked.get(i).sender_process;
+			ackmsg_times[i] = acked.get(i).sender_time;
+		}
+		this.message = m;
+	}
+
+	/**
+	 * Make an ack for the messages with the given senders and times, used
+	 * when decoding
+	 */
+	VectorAck(int sender_process, int time, int[] ackmsg_processes, int[] ackmsg_times, Message m) {
+		super(sender_process, time);
+		this.ackmsg_processes = ackmsg_processes;
+		this.ackmsg_times = ackmsg_times;
+		this.message = m;
+	}
+
+	/**
+	 * @return the number of acknowledgements
+	 */
+	public int size() {
+		return ackmsg_times.length;
+	}
+
+	/**
+	 * @return the id of the i-th acknowledged message
+	 */
+	public long getAckedId(int i) {
+		return Message.id(ackmsg_processes[i], ackmsg_times[i]);
+	}
+
+	/**
+	 * @return the i-th acknowledgement
+	 */
+	public Ack getAck(int i) {
+		return new Ack(sender_process, sender_time, ackmsg_processes[i], ackmsg_times[i]);
+	}
+
+	public String toString() {
+		return String.format("VACK[%d,%d,%d acks%s]", sender_process, sender_time, size(), message == null ? "" : "," + message.toString());
+	}
+}
@@ -0,0 +1,30 @@
+package ex1;
+
+import java.util.List;
+
+/**
+ * Sent by every process that takes a failed process out of the group, with
+ * the messages of the failed process it has not delivered yet. Once a
+ * process has this from every other process that stays, it has everything
+ * any of them took from the failed process, and nothing waits for its
+ * acknowledgements anymore.
+ */
+public class ViewChange extends Message {
+	private static final long serialVersionUID = 5316170325683210837L;
+
+	public final int removed;
+	/**
+	 * Undelivered messages of the removed process, in order
+	 */
+	public final List<Message> messages;
+
+	public ViewChange(int sender_process, int time, int removed, List<Message> messages) {
+		super(sender_process, time);
+		this.removed = removed;
+		this.messages = messages;
+	}
+
+	public String toString() {
+		return String.format("VIEW[%d,%d,-%d,%d messages]", sender_process, sender_time, removed, messages.size());
+	}
+}
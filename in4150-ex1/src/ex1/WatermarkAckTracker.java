@@ -0,0 +1,159 @@
+package ex1;
+
+import java.util.*;
+
+/**
+ * Tracks the highest clock received from every process.
+ *
+ * Over FIFO channels a process will never send a message with a lower clock
+ * than one it already sent. So once every process has sent something with a
+ * clock at or past m (with the process id as tie-breaker), no message that
+ * should be delivered before m can still arrive, and m can be delivered. The
+ * acks every process sends make sure this happens.
+ *
+ * Memory is O(processes) and canDeliver is O(1). The minimum watermark is
+ * cached and only recomputed when the process holding it moves on.
+ */
+public class WatermarkAckTracker implements AckTracker {
+	/**
+	 * process id -> index in the arrays
+	 */
+	private final LongMap index = new LongMap();
+	private int[] pids = new int[0];
+	/**
+	 * Highest clock received from each process
+	 */
+	private int[] watermark = new int[0];
+	/**
+	 * Index of the process with the lowest watermark
+	 */
+	private int min = 0;
+	/**
+	 * Number of processes that were removed, they keep their index
+	 */
+	private int removed = 0;
+	/**
+	 * All processes, can still grow while the group is being started
+	 */
+	private final Collection<Integer> processes;
+
+	public WatermarkAckTracker(Collection<Integer> processes) {
+		this.processes = processes;
+		addProcesses();
+	}
+
+	/**
+	 * Start tracking processes that were added to the group
+	 */
+	private void addProcesses() {
+		if (processes.size() == pids.length - removed) {
+			return;
+		}
+		for (int p : processes) {
+			if (!index.containsKey(p)) {
+				int i = pids.length;
+				index.put(p, i);
+				pids = Arrays.copyOf(pids, i + 1);
+				pids[i] = p;
+				watermark = Arrays.copyOf(watermark, i + 1);
+				// Nothing received yet, clocks start at 0 and messages at 1
+				watermark[i] = -1;
+				if (before(i, min)) {
+					min = i;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void received(Message m) {
+		advance(m.sender_process, m.sender_time);
+	}
+
+	@Override
+	public void acked(Ack a) {
+		advance(a.sender_process, a.sender_time);
+	}
+
+	@Override
+	public void acked(int sender_process, int sender_time, long acked) {
+		advance(sender_process, sender_time);
+	}
+
+	private void advance(int process, int time) {
+		addProcesses();
+		int i = (int) index.get(process, -1);
+		if (i < 0 || time <= watermark[i]) {
+			return;
+		}
+		watermark[i] = time;
+		if (i == min) {
+			// The lowest one moved up, find the new lowest
+			for (int j = 0; j < watermark.length; j++) {
+				if (before(j, min)) {
+					min = j;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the watermark of i is lower than the one of j
+	 */
+	private boolean before(int i, int j) {
+		return watermark[i] < watermark[j] || (watermark[i] == watermark[j] && pids[i] < pids[j]);
+	}
+
+	@Override
+	public boolean canDeliver(Message m) {
+		return canDeliver(m.sender_process, m.sender_time);
+	}
+
+	@Override
+	public boolean canDeliver(long id) {
+		return canDeliver(Message.process(id), Message.time(id));
+	}
+
+	private boolean canDeliver(int process, int time) {
+		addProcesses();
+		if (pids.length == 0) {
+			return true;
+		}
+		int t = watermark[min];
+		return t > time || (t == time && pids[min] >= process);
+	}
+
+	@Override
+	public void delivered(Message m) {
+		// Nothing is kept per message
+	}
+
+	@Override
+	public void removed(int process) {
+		int i = (int) index.get(process, -1);
+		if (i < 0 || watermark[i] == Integer.MAX_VALUE) {
+			return;
+		}
+		// Past everything, it never holds a message back again
+		watermark[i] = Integer.MAX_VALUE;
+		removed++;
+		for (int j = 0; j < watermark.length; j++) {
+			if (before(j, min)) {
+				min = j;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return watermark.length;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < pids.length; i++) {
+			sb.append(i == 0 ? "" : ", ").append(pids[i]).append('=').append(watermark[i]);
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,117 @@
+package ex1.kv;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Command of the replicated store, broadcast as the data of a message
+ */
+public class Command {
+	public static final byte PUT = 0;
+	public static final byte DELETE = 1;
+	/**
+	 * Changes nothing, a process that applied it has applied everything
+	 * that was written before it was broadcast
+	 */
+	public static final byte SYNC = 2;
+
+	public final byte op;
+	public final String key;
+	public final String value;
+	/**
+	 * System.nanoTime() of the process that broadcast the command, when it
+	 * did. Only means something to that process.
+	 */
+	public final long stamp;
+
+	public Command(byte op, String key, String value) {
+		this(op, key, value, System.nanoTime());
+	}
+
+	private Command(byte op, String key, String value, long stamp) {
+		this.op = op;
+		this.key = key;
+		this.value = value;
+		this.stamp = stamp;
+	}
+
+	/**
+	 * Apply the command to the data of a store
+	 * @return the value key had before
+	 */
+	public String apply(Map<String, String> data) {
+		switch (op) {
+		case PUT:
+			return data.put(key, value);
+		case DELETE:
+			return data.remove(key);
+		default:
+			return null;
+		}
+	}
+
+	public byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(op);
+			out.writeLong(stamp);
+			write(out, key == null ? "" : key);
+			write(out, value);
+		} catch (IOException e) {
+			// Not from a byte array
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Write the length and the UTF-8 bytes of s, or -1 for null. Not
+	 * writeUTF(), it only takes strings up to 64 KB.
+	 */
+	private static void write(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static String read(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > in.available()) {
+			throw new EOFException("String of " + length + " bytes in a shorter command");
+		}
+		byte[] b = new byte[length];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	public static Command decode(byte[] data) {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+			byte op = in.readByte();
+			long stamp = in.readLong();
+			String key = read(in);
+			String value = read(in);
+			return new Command(op, key, value, stamp);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Not a command", e);
+		}
+	}
+
+	public String toString() {
+		switch (op) {
+		case PUT:
+			return "PUT " + key + "=" + value;
+		case DELETE:
+			return "DELETE " + key;
+		default:
+			return "SYNC";
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package ex1.kv;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import ex1.*;
+import ex1.Process;
+
+/**
+ * Key-value store replicated over the processes of a group. Writes are
+ * broadcast as commands and applied by every replica in the order they are
+ * delivered, so all replicas go through the same states.
+ *
+ * A write returns once the replica that made it has applied it, which makes
+ * writes linearizable. A read is served from the local replica if that was
+ * known to be up to date at most the staleness bound ago, otherwise it first
+ * broadcasts a sync and waits for it to be applied. A bound of 0 makes every
+ * read linearizable.
+ *
+ * Every so many commands the replica takes a snapshot, the commands up to it
+ * are not needed anymore. With a snapshot file the snapshot is written to it
+ * before it counts, and a restarted replica starts from it and the commands
+ * its process delivered after it.
+ */
+public class ReplicatedStore implements Target {
+	/**
+	 * Copy of the data of a replica after it applied a number of commands
+	 */
+	public static class Snapshot implements Serializable {
+		private static final long serialVersionUID = -7026931412380548331L;
+
+		public final Map<String, String> data;
+		public final long applied;
+		/**
+		 * Message of the last command applied, or null
+		 */
+		public final Message last;
+
+		Snapshot(Map<String, String> data, long applied, Message last) {
+			this.data = Collections.unmodifiableMap(data);
+			this.applied = applied;
+			this.last = last;
+		}
+
+		public String toString() {
+			return String.format("%d keys after %d commands, up to %s", data.size(), applied, last);
+		}
+	}
+
+	private final Process process;
+	/**
+	 * Maximum age in ns of the local data for a read
+	 */
+	private final long staleness;
+	/**
+	 * Number of commands between snapshots, 0 for none
+	 */
+	private final int snapshot_interval;
+	/**
+	 * File the snapshots are written to, or null to keep them in memory
+	 */
+	private final File file;
+
+	private Map<String, String> data = new HashMap<>();
+	/**
+	 * Commands applied since the last snapshot
+	 */
+	private final List<Payload> log = new ArrayList<>();
+	/**
+	 * Last snapshot, it is in the file if there is one
+	 */
+	private Snapshot snapshot;
+	private long applied = 0;
+	private Message last;
+	/**
+	 * Time the last applied command this replica broadcast was broadcast,
+	 * the data has every write that completed before it. Only set by
+	 * broadcast(), the stamps of other commands are from other JVMs or from
+	 * before a restart.
+	 */
+	private long fresh_at;
+	private boolean fresh = false;
+	/**
+	 * Applied commands of this replica -> the value the key had before
+	 */
+	private final Map<Long, String> results = new HashMap<>();
+
+	private long local_reads = 0;
+	private long synced_reads = 0;
+	private long writes = 0;
+	private long snapshots = 0;
+
+	/**
+	 * @param staleness
+	 *            maximum age in ms of the local data for a read, 0 to make
+	 *            every read wait for a sync
+	 * @param snapshot_interval
+	 *            number of commands between snapshots, 0 for none
+	 */
+	public ReplicatedStore(Process process, int staleness, int snapshot_interval) {
+		this.process = process;
+		this.staleness = staleness * 1000000L;
+		this.snapshot_interval = snapshot_interval;
+		this.file = null;
+	}
+
+	/**
+	 * A replica that writes its snapshots to file. If the file has a
+	 * snapshot, the replica starts from it and applies the commands the
+	 * process recovered from its log after it.
+	 */
+	public ReplicatedStore(Process process, int staleness, int snapshot_interval, File file) throws IOException {
+		this.process = process;
+		this.staleness = staleness * 1000000L;
+		this.snapshot_interval = snapshot_interval;
+		this.file = file;
+		if (file.exists()) {
+			install(read(file));
+		}
+		for (Payload m : process.getRecoveredDeliveries()) {
+			if (last == null || Message.after(m.getId(), last)) {
+				apply(m, Command.decode(m.data));
+			}
+		}
+	}
+
+	/**
+	 * Set the value of key at every replica
+	 * @return the value it had before
+	 */
+	public String put(String key, String value) throws InterruptedException {
+		return write(new Command(Command.PUT, key, value));
+	}
+
+	/**
+	 * Remove key at every replica
+	 * @return the value it had before
+	 */
+	public String delete(String key) throws InterruptedException {
+		return write(new Command(Command.DELETE, key, null));
+	}
+
+	/**
+	 * @return the value of key, at most the staleness bound out of date
+	 */
+	public String get(String key) throws InterruptedException {
+		synchronized (this) {
+			if (fresh && System.nanoTime() - fresh_at <= staleness) {
+				local_reads++;
+				return data.get(key);
+			}
+		}
+		sync();
+		synchronized (this) {
+			synced_reads++;
+			return data.get(key);
+		}
+	}
+
+	/**
+	 * Wait until this replica has applied every write that completed before
+	 */
+	public void sync() throws InterruptedException {
+		broadcast(new Command(Command.SYNC, null, null));
+	}
+
+	private String write(Command c) throws InterruptedException {
+		String previous = broadcast(c);
+		synchronized (this) {
+			writes++;
+		}
+		return previous;
+	}
+
+	/**
+	 * Broadcast a command and wait for this replica to apply it
+	 * @return the value its key had before
+	 */
+	private String broadcast(Command c) throws InterruptedException {
+		Message m = process.sendNewMessage(c.encode());
+		if (m == null) {
+			throw new InterruptedException();
+		}
+		long id = m.getId();
+		synchronized (this) {
+			while (!results.containsKey(id)) {
+				wait();
+			}
+			fresh_at = fresh ? Math.max(fresh_at, c.stamp) : c.stamp;
+			fresh = true;
+			return results.remove(id);
+		}
+	}
+
+	@Override
+	public synchronized void deliver(int deliveringPID, Message m) {
+		if (!(m instanceof Payload)) {
+			return;
+		}
+		Command c = Command.decode(((Payload) m).data);
+		String previous = apply(m, c);
+		if (m.sender_process == process.process_id) {
+			// For broadcast(), which can only wait once it has the id
+			results.put(m.getId(), previous);
+			notifyAll();
+		}
+		if (snapshot_interval > 0) {
+			log.add((Payload) m);
+			if (log.size() >= snapshot_interval) {
+				snapshot();
+			}
+		}
+	}
+
+	/**
+	 * Apply the command c of message m to the data
+	 * @return the value its key had before
+	 */
+	private String apply(Message m, Command c) {
+		String previous = c.apply(data);
+		applied++;
+		last = m;
+		return previous;
+	}
+
+	/**
+	 * Take a snapshot of the data, the commands up to it are dropped. With a
+	 * file it only replaces the last snapshot once it is written.
+	 */
+	public synchronized Snapshot snapshot() {
+		Snapshot s = new Snapshot(new HashMap<>(data), applied, last);
+		log.clear();
+		if (file != null) {
+			try {
+				write(s);
+			} catch (IOException e) {
+				// Try again at the next one, the last snapshot still holds
+				System.err.println("Could not write snapshot to " + file + ": " + e.getMessage());
+				return snapshot;
+			}
+		}
+		snapshot = s;
+		snapshots++;
+		return snapshot;
+	}
+
+	/**
+	 * Write a snapshot to the file and force it to disk, replacing the one
+	 * in it
+	 */
+	private void write(Snapshot s) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream f = new FileOutputStream(tmp);
+				ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(f))) {
+			out.writeObject(s);
+			out.flush();
+			f.getFD().sync();
+		}
+		try {
+			// Atomically, there is always a snapshot in the file
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			tmp.delete();
+			throw new IOException("Could not replace " + file, e);
+		}
+	}
+
+	private static Snapshot read(File file) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return (Snapshot) in.readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("No snapshot in " + file, e);
+		}
+	}
+
+	/**
+	 * @return the last snapshot, or null. With a file it is on disk, the
+	 *         delivery logs can be truncated up to it.
+	 */
+	public synchronized Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Replace the data by a snapshot of another replica. The process has to
+	 * deliver exactly the commands after it from then on.
+	 */
+	public synchronized void restore(Snapshot s) throws IOException {
+		if (file != null) {
+			write(s);
+		}
+		install(s);
+	}
+
+	private void install(Snapshot s) {
+		data = new HashMap<>(s.data);
+		applied = s.applied;
+		last = s.last;
+		log.clear();
+		snapshot = s;
+	}
+
+	public Process getProcess() {
+		return process;
+	}
+
+	/**
+	 * @return a copy of the data
+	 */
+	public synchronized Map<String, String> getData() {
+		return new HashMap<>(data);
+	}
+
+	public synchronized long getApplied() {
+		return applied;
+	}
+
+	public synchronized String toString() {
+		return String.format("%d keys, %d commands applied, %d writes, %d local and %d synced reads, %d snapshots, %d commands since the last",
+				data.size(), applied, writes, local_reads, synced_reads, snapshots, log.size());
+	}
+}
@@ -0,0 +1,42 @@
+package ex1.sim;
+
+import java.util.Random;
+
+/**
+ * Network latency of a message: a fixed minimum plus exponentially
+ * distributed jitter, drawn from a seeded generator.
+ */
+public class LatencyModel {
+	private final Random random;
+	/**
+	 * Minimum latency in microseconds
+	 */
+	private final long min;
+	/**
+	 * Mean jitter on top of the minimum in microseconds
+	 */
+	private final double jitter;
+
+	/**
+	 * @param min_ms
+	 *            minimum latency in ms
+	 * @param jitter_ms
+	 *            mean jitter on top of the minimum in ms
+	 */
+	public LatencyModel(long seed, double min_ms, double jitter_ms) {
+		this.random = new Random(seed);
+		this.min = (long) (min_ms * 1000);
+		this.jitter = jitter_ms * 1000;
+	}
+
+	/**
+	 * @return the latency of the next message in microseconds
+	 */
+	public long next() {
+		return min + (long) (-jitter * Math.log(1 - random.nextDouble()));
+	}
+
+	public String toString() {
+		return String.format("%.1f ms + exp(%.1f ms)", min / 1000.0, jitter / 1000);
+	}
+}
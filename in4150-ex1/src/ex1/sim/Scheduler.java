@@ -0,0 +1,150 @@
+package ex1.sim;
+
+import java.util.Arrays;
+
+/**
+ * Runs events in virtual time, on the calling thread. Events at the same
+ * time run in the order they were scheduled, so a run only depends on what
+ * was scheduled and not on the real time anything took.
+ *
+ * The events are kept in a binary heap on parallel arrays instead of a
+ * PriorityQueue of event objects. A large group has millions of events
+ * waiting, and comparing without following a reference per event keeps the
+ * heap in the cache.
+ */
+public class Scheduler {
+	/**
+	 * Time, order of scheduling and action of every event in the heap
+	 */
+	private long[] times = new long[1024];
+	private long[] seqs = new long[1024];
+	private Runnable[] actions = new Runnable[1024];
+	private int size = 0;
+
+	/**
+	 * Virtual time in microseconds
+	 */
+	private long now = 0;
+	/**
+	 * Number of events scheduled so far, orders events at the same time
+	 */
+	private long scheduled = 0;
+	private long executed = 0;
+
+	/**
+	 * @return the virtual time in microseconds
+	 */
+	public long now() {
+		return now;
+	}
+
+	/**
+	 * Run an event after a delay
+	 *
+	 * @param delay
+	 *            virtual time in microseconds from now
+	 */
+	public void schedule(long delay, Runnable action) {
+		at(now + Math.max(0, delay), action);
+	}
+
+	/**
+	 * Run an event at a virtual time, or now if that has passed
+	 */
+	public void at(long time, Runnable action) {
+		if (size == times.length) {
+			times = Arrays.copyOf(times, 2 * size);
+			seqs = Arrays.copyOf(seqs, 2 * size);
+			actions = Arrays.copyOf(actions, 2 * size);
+		}
+		long t = Math.max(now, time);
+		long seq = scheduled++;
+		// Sift up
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(t, seq, parent)) {
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		times[i] = t;
+		seqs[i] = seq;
+		actions[i] = action;
+	}
+
+	/**
+	 * Run the next event
+	 *
+	 * @return false if there were no more events
+	 */
+	public boolean step() {
+		if (size == 0) {
+			return false;
+		}
+		now = times[0];
+		Runnable action = actions[0];
+		size--;
+		if (size > 0) {
+			// Sift the last event down from the top
+			long t = times[size];
+			long seq = seqs[size];
+			Runnable a = actions[size];
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && before(times[child + 1], seqs[child + 1], child)) {
+					child++;
+				}
+				if (!before(times[child], seqs[child], t, seq)) {
+					break;
+				}
+				move(child, i);
+				i = child;
+			}
+			times[i] = t;
+			seqs[i] = seq;
+			actions[i] = a;
+		}
+		actions[size] = null;
+		executed++;
+		action.run();
+		return true;
+	}
+
+	/**
+	 * @return true if an event at time t scheduled as seq comes before
+	 *         event i
+	 */
+	private boolean before(long t, long seq, int i) {
+		return before(t, seq, times[i], seqs[i]);
+	}
+
+	private static boolean before(long t1, long seq1, long t2, long seq2) {
+		return t1 < t2 || (t1 == t2 && seq1 < seq2);
+	}
+
+	private void move(int from, int to) {
+		times[to] = times[from];
+		seqs[to] = seqs[from];
+		actions[to] = actions[from];
+	}
+
+	/**
+	 * @return the number of events waiting
+	 */
+	public int pending() {
+		return size;
+	}
+
+	/**
+	 * @return the number of events that have run
+	 */
+	public long getExecuted() {
+		return executed;
+	}
+}
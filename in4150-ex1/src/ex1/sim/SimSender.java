@@ -0,0 +1,56 @@
+package ex1.sim;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ex1.Sender;
+
+/**
+ * Sender that runs the sends as events of the scheduler instead of on a
+ * pool, or right away if they are due. There is never a lack of room.
+ */
+public class SimSender extends Sender {
+	private final Scheduler scheduler;
+	/**
+	 * Destination -> time the last send to it is due, only used for a FIFO
+	 * sender
+	 */
+	private final Map<Object, Long> last_due = new HashMap<>();
+
+	public SimSender(Scheduler scheduler, String name, boolean fifo) {
+		// The pool is never used, so it never starts a thread
+		super(name, 1, 1, fifo);
+		this.scheduler = scheduler;
+	}
+
+	@Override
+	public boolean send(Object destination, Runnable send, int delay) {
+		long due = scheduler.now() + delay * 1000L;
+		if (isFifo()) {
+			Long last = last_due.get(destination);
+			if (last != null && last > due) {
+				due = last;
+			}
+			last_due.put(destination, due);
+		}
+		if (due <= scheduler.now()) {
+			// The transport delays the message, so sending now can't
+			// run into the sending process again
+			send.run();
+		} else {
+			scheduler.at(due, send);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean awaitRoom() {
+		return true;
+	}
+
+	@Override
+	public boolean stop(int timeout) {
+		super.stop(0);
+		return true;
+	}
+}
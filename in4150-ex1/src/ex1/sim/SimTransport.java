@@ -0,0 +1,75 @@
+package ex1.sim;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ex1.Message;
+import ex1.Process;
+import ex1.Transport;
+
+/**
+ * Transport that receives every message after a latency drawn from the
+ * latency model, as an event of the scheduler.
+ */
+public class SimTransport implements Transport {
+	private final Scheduler scheduler;
+	private final LatencyModel latency;
+	/**
+	 * Endpoint -> process, shared by all transports of the simulation
+	 */
+	private final Map<String, Process> processes;
+	/**
+	 * Whether messages to a process arrive in the order they were sent
+	 */
+	private final boolean fifo;
+	/**
+	 * Endpoint -> time the last message to it arrives, only used if FIFO
+	 */
+	private final Map<String, Long> last_arrival = new HashMap<>();
+
+	public SimTransport(Scheduler scheduler, LatencyModel latency, Map<String, Process> processes, boolean fifo) {
+		this.scheduler = scheduler;
+		this.latency = latency;
+		this.processes = processes;
+		this.fifo = fifo;
+	}
+
+	@Override
+	public void start(Process p) {
+	}
+
+	@Override
+	public void send(String endpoint, final List<Message> ms) throws IOException {
+		final Process q = processes.get(endpoint);
+		if (q == null) {
+			throw new IOException("No process at " + endpoint);
+		}
+		long arrival = scheduler.now() + latency.next();
+		if (fifo) {
+			Long last = last_arrival.get(endpoint);
+			if (last != null && last > arrival) {
+				arrival = last;
+			}
+			last_arrival.put(endpoint, arrival);
+		}
+		scheduler.at(arrival, new Runnable() {
+			public void run() {
+				if (ms.size() == 1) {
+					q.receive(ms.get(0));
+				} else {
+					q.receiveBatch(ms);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	public String toString() {
+		return "simulated, " + latency.toString();
+	}
+}
@@ -0,0 +1,214 @@
+package ex1.sim;
+
+import java.rmi.RemoteException;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ex1.*;
+import ex1.Process;
+import ex1.testcases.OrderVerifier;
+
+/**
+ * Runs a group of ex1 processes in virtual time, with the real protocol but
+ * simulated sends and network. All events run on one thread in a fixed
+ * order, so the same seed gives the same run.
+ *
+ * Broadcasts start at exponentially distributed intervals from random
+ * processes. At the end it reports how many messages a delivery took, how
+ * deep the queues of undelivered messages got and the latency from broadcast
+ * to delivery in virtual time. An OrderVerifier checks every delivery, a
+ * run that delivers in different orders fails.
+ *
+ * Simulator processes broadcasts [seed]
+ *
+ * -Dex1.sim.latency=ms minimum network latency, default 1
+ * -Dex1.sim.jitter=ms mean jitter on top of the latency, default 2
+ * -Dex1.sim.interval=ms mean time between broadcasts of the group, default 1
+ * -Dex1.sim.sample=ms time between queue depth samples, default 1
+ * -Dex1.sim.limit=s virtual time after which the run is stopped, default 600
+ * -Dex1.acks, -Dex1.ordering, -Dex1.batch and -Dex1.linger as for TBS_Main
+ */
+public class Simulator implements Target {
+	private final static double latency_ms = Double.parseDouble(System.getProperty("ex1.sim.latency", "1"));
+	private final static double jitter_ms = Double.parseDouble(System.getProperty("ex1.sim.jitter", "2"));
+	private final static double interval_ms = Double.parseDouble(System.getProperty("ex1.sim.interval", "1"));
+	private final static int sample_ms = Integer.getInteger("ex1.sim.sample", 1);
+	private final static int limit_s = Integer.getInteger("ex1.sim.limit", 600);
+	private final static AckTracker.MODE ack_mode = AckTracker.MODE.valueOf(System.getProperty("ex1.acks", "exact").toUpperCase());
+	private final static Ordering.MODE ordering_mode = Ordering.MODE.valueOf(System.getProperty("ex1.ordering", "acks").toUpperCase());
+	private final static int max_batch = Integer.getInteger("ex1.batch", 1);
+	private final static int linger = Integer.getInteger("ex1.linger", 0);
+
+	private final Scheduler scheduler = new Scheduler();
+	private final Random random;
+	private final List<Process> processes = new ArrayList<>();
+	private final int broadcasts;
+	private final OrderVerifier verifier;
+
+	/**
+	 * Broadcast message -> virtual time it was broadcast
+	 */
+	private final Map<Message, Long> sent = new HashMap<>();
+	/**
+	 * Broadcast to delivery latencies in microseconds
+	 */
+	private long[] latencies = new long[1024];
+	private int deliveries = 0;
+
+	private long depth_samples = 0;
+	private long depth_total = 0;
+	private int depth_max = 0;
+
+	public static void main(String... args) throws RemoteException {
+		if (args.length < 2) {
+			System.out.println("Simulator processes broadcasts [seed]");
+			return;
+		}
+		Logger.getLogger("Process").setLevel(Level.WARNING);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		if (!new Simulator(Integer.parseInt(args[0]), Integer.parseInt(args[1]), seed).run()) {
+			System.exit(1);
+		}
+	}
+
+	public Simulator(int n, int broadcasts, long seed) throws RemoteException {
+		this.random = new Random(seed);
+		this.broadcasts = broadcasts;
+		LatencyModel latency = new LatencyModel(seed + 1, latency_ms, jitter_ms);
+		// The order of acknowledgements needs every channel to be FIFO, exact
+		// acks misorder deliveries without it too
+		boolean fifo = true;
+
+		Map<Integer, String> endpoints = new HashMap<>();
+		Map<String, Process> byendpoint = new HashMap<>();
+		for (int pid = 0; pid < n; pid++) {
+			endpoints.put(pid, "sim:" + pid);
+		}
+		for (int pid = 0; pid < n; pid++) {
+			Transport t = new SimTransport(scheduler, latency, byendpoint, fifo);
+			Sender s = new SimSender(scheduler, "P_" + pid + "-sender", fifo);
+			Process p = new Process(pid, Collections.unmodifiableMap(endpoints), t, s, ack_mode);
+			p.setRandomDelay(false);
+			p.setBatching(max_batch, linger);
+			p.setOrdering(ordering_mode.create(p));
+			p.setTarget(this);
+			byendpoint.put(endpoints.get(pid), p);
+			processes.add(p);
+		}
+		this.verifier = new OrderVerifier(endpoints.keySet(), broadcasts);
+		System.out.println(String.format("Simulating %d processes, %d broadcasts every %.1f ms, latency %s, seed %d", n, broadcasts, interval_ms,
+				latency.toString(), seed));
+		System.out.println(String.format("\tacks %s, ordering %s, batch %d, linger %d ms", ack_mode, ordering_mode, max_batch, linger));
+	}
+
+	@Override
+	public void deliver(int deliveringPID, Message m) {
+		if (deliveries == latencies.length) {
+			latencies = Arrays.copyOf(latencies, 2 * latencies.length);
+		}
+		latencies[deliveries++] = scheduler.now() - sent.get(m);
+		verifier.deliver(deliveringPID, m);
+	}
+
+	/**
+	 * Broadcast from a random process and schedule the next broadcast
+	 */
+	private void broadcast(final int left) {
+		Process p = processes.get(random.nextInt(processes.size()));
+		Message m = p.sendNewMessage();
+		if (m == null) {
+			// Interrupted while waiting for the window, stop broadcasting
+			return;
+		}
+		sent.put(m, scheduler.now());
+		if (left > 1) {
+			scheduler.schedule(nextInterval(), new Runnable() {
+				public void run() {
+					broadcast(left - 1);
+				}
+			});
+		}
+	}
+
+	private long nextInterval() {
+		return (long) (-interval_ms * 1000 * Math.log(1 - random.nextDouble()));
+	}
+
+	private void sample() {
+		for (Process p : processes) {
+			int d = p.getQueueDepth();
+			depth_total += d;
+			depth_max = Math.max(depth_max, d);
+		}
+		depth_samples += processes.size();
+	}
+
+	/**
+	 * @return false if the processes delivered in different orders
+	 */
+	public boolean run() {
+		for (Process p : processes) {
+			p.start();
+		}
+		if (broadcasts > 0) {
+			scheduler.schedule(0, new Runnable() {
+				public void run() {
+					broadcast(broadcasts);
+				}
+			});
+		}
+		long expected = (long) broadcasts * processes.size();
+		long limit = limit_s * 1000000L;
+		long next_sample = 0;
+		long start = System.nanoTime();
+		while (deliveries < expected && scheduler.now() < limit && verifier.getFailure() == null) {
+			if (scheduler.now() >= next_sample) {
+				sample();
+				next_sample += sample_ms * 1000L;
+			}
+			if (!scheduler.step()) {
+				break;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		report(expected, elapsed);
+		return verifier.getFailure() == null;
+	}
+
+	private void report(long expected, long elapsed) {
+		long messages = 0;
+		long calls = 0;
+		for (Process p : processes) {
+			messages += p.getMessagesSent();
+			calls += p.getCalls();
+		}
+		System.out.println(String.format("Simulated %.3f s in %.2f s, %d events (%.0f/s)", scheduler.now() / 1e6, elapsed / 1e9,
+				scheduler.getExecuted(), scheduler.getExecuted() / (elapsed / 1e9)));
+		String failure = verifier.getFailure();
+		if (failure != null) {
+			System.out.println("\tdelivered in different orders: " + failure);
+		} else if (deliveries < expected) {
+			System.out.println(String.format("\tdid not complete, %d of %d deliveries", deliveries, expected));
+		} else {
+			System.out.println(String.format("\t%d deliveries", deliveries));
+		}
+		if (deliveries == 0) {
+			return;
+		}
+		System.out.println(String.format("\tmessages: %.1f per delivery in %.1f calls, %.1f per broadcast", messages / (double) deliveries,
+				calls / (double) deliveries, messages / (double) broadcasts));
+		System.out.println(String.format("\tqueue depth: avg %.2f, max %d", depth_total / (double) Math.max(1, depth_samples), depth_max));
+		long[] sorted = Arrays.copyOf(latencies, deliveries);
+		Arrays.sort(sorted);
+		System.out.println(String.format("\tlatency: p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms", percentile(sorted, 0.5),
+				percentile(sorted, 0.99), percentile(sorted, 0.999), sorted[sorted.length - 1] / 1e3));
+	}
+
+	/**
+	 * @return the percentile of the sorted latencies in ms
+	 */
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e3;
+	}
+}
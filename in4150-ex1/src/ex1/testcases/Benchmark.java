@@ -0,0 +1,139 @@
+package ex1.testcases;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import ex1.*;
+import ex1.Process;
+
+/**
+ * Measures throughput and delivery latency of the local processes. Every
+ * process broadcasts a number of messages as fast as it can, without random
+ * delays, and the time from broadcast to delivery is measured at every
+ * process. All processes of the group have to be local.
+ */
+public class Benchmark extends Thread implements BatchTarget {
+	/**
+	 * Maximum time in ms to wait for all deliveries
+	 */
+	private static final int TIMEOUT = 120000;
+
+	private final Map<Integer, Process> localprocessmap;
+	private final int messages;
+
+	/**
+	 * Message -> time it was broadcast
+	 */
+	private final ConcurrentMap<Message, Long> sent = new ConcurrentHashMap<>();
+	/**
+	 * Message and time of every delivery
+	 */
+	private final Queue<Object[]> delivered = new ConcurrentLinkedQueue<>();
+	private final CountDownLatch done;
+
+	/**
+	 * @param messages
+	 *            number of messages every process broadcasts
+	 */
+	public Benchmark(Map<Integer, Process> localprocessmap, int messages) {
+		this.localprocessmap = localprocessmap;
+		this.messages = messages;
+		int n = localprocessmap.size();
+		this.done = new CountDownLatch(n * n * messages);
+	}
+
+	@Override
+	public void deliver(int deliveringPID, Message m) {
+		delivered.add(new Object[] { m, System.nanoTime() });
+		done.countDown();
+	}
+
+	@Override
+	public void deliver(int deliveringPID, List<Message> ms) {
+		long t = System.nanoTime();
+		for (Message m : ms) {
+			delivered.add(new Object[] { m, t });
+			done.countDown();
+		}
+	}
+
+	public void run() {
+		for (Process p : localprocessmap.values()) {
+			p.setRandomDelay(false);
+		}
+		long sent_before = messagesSent();
+		long calls_before = calls();
+		long start = System.nanoTime();
+		boolean interrupted = false;
+		sending: for (int i = 0; i < messages; i++) {
+			for (Process p : localprocessmap.values()) {
+				long t = System.nanoTime();
+				Message m = p.sendNewMessage();
+				if (m == null) {
+					// Interrupted while waiting for the window
+					interrupted = true;
+					break sending;
+				}
+				sent.put(m, t);
+			}
+		}
+		boolean completed = false;
+		try {
+			completed = !interrupted && done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+		}
+		long elapsed = System.nanoTime() - start;
+		for (Process p : localprocessmap.values()) {
+			p.setRandomDelay(true);
+		}
+		if (interrupted) {
+			System.out.println("Benchmark interrupted");
+			return;
+		}
+		if (!completed) {
+			System.out.println("Benchmark did not complete, " + done.getCount() + " deliveries missing");
+			return;
+		}
+
+		long[] latencies = new long[delivered.size()];
+		int i = 0;
+		for (Object[] d : delivered) {
+			latencies[i++] = (Long) d[1] - sent.get(d[0]);
+		}
+		Arrays.sort(latencies);
+		long total = 0;
+		for (long l : latencies) {
+			total += l;
+		}
+		int broadcasts = messages * localprocessmap.size();
+		System.out.println(String.format("Benchmark: %d processes, %d broadcasts in %.2f s", localprocessmap.size(), broadcasts, elapsed / 1e9));
+		System.out.println(String.format("\tthroughput: %.1f broadcasts/s", broadcasts / (elapsed / 1e9)));
+		System.out.println(String.format("\tlatency: avg %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms", total / 1e6 / latencies.length,
+				percentile(latencies, 0.5), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6));
+		System.out.println(String.format("\tmessages: %.1f per broadcast in %.1f calls", (messagesSent() - sent_before) / (double) broadcasts,
+				(calls() - calls_before) / (double) broadcasts));
+	}
+
+	private long messagesSent() {
+		long s = 0;
+		for (Process p : localprocessmap.values()) {
+			s += p.getMessagesSent();
+		}
+		return s;
+	}
+
+	private long calls() {
+		long s = 0;
+		for (Process p : localprocessmap.values()) {
+			s += p.getCalls();
+		}
+		return s;
+	}
+
+	/**
+	 * @return the percentile of the sorted latencies in ms
+	 */
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e6;
+	}
+}
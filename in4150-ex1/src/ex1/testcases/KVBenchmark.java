@@ -0,0 +1,154 @@
+package ex1.testcases;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import ex1.kv.ReplicatedStore;
+
+/**
+ * Runs a client against the replicated store of every local process. Every
+ * client does a number of reads and writes on random keys, and the time
+ * every operation takes is measured. Afterwards all replicas are synced and
+ * their data is checked to be the same. Random delays are off meanwhile.
+ */
+public class KVBenchmark extends Thread {
+	/**
+	 * Maximum time in ms to wait for the clients
+	 */
+	private static final int TIMEOUT = 120000;
+
+	private final Map<Integer, ReplicatedStore> stores;
+	private final int operations;
+	private final int keys;
+	private final double reads;
+
+	/**
+	 * Latencies in ns
+	 */
+	private final Queue<Long> read_latencies = new ConcurrentLinkedQueue<>();
+	private final Queue<Long> write_latencies = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param operations
+	 *            number of operations of every client
+	 * @param keys
+	 *            number of different keys
+	 * @param reads
+	 *            part of the operations that are reads
+	 */
+	public KVBenchmark(Map<Integer, ReplicatedStore> stores, int operations, int keys, double reads) {
+		this.stores = stores;
+		this.operations = operations;
+		this.keys = keys;
+		this.reads = reads;
+	}
+
+	private void client(int pid, ReplicatedStore store) throws InterruptedException {
+		Random random = new Random(pid);
+		for (int i = 0; i < operations; i++) {
+			String key = "k" + random.nextInt(keys);
+			long start = System.nanoTime();
+			if (random.nextDouble() < reads) {
+				store.get(key);
+				read_latencies.add(System.nanoTime() - start);
+			} else {
+				store.put(key, pid + ":" + i);
+				write_latencies.add(System.nanoTime() - start);
+			}
+		}
+	}
+
+	public void run() {
+		for (ReplicatedStore store : stores.values()) {
+			store.getProcess().setRandomDelay(false);
+		}
+		try {
+			measure();
+		} finally {
+			for (ReplicatedStore store : stores.values()) {
+				store.getProcess().setRandomDelay(true);
+			}
+		}
+	}
+
+	private void measure() {
+		ExecutorService clients = Executors.newFixedThreadPool(stores.size());
+		List<Future<?>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (final Map.Entry<Integer, ReplicatedStore> e : stores.entrySet()) {
+			futures.add(clients.submit(new Callable<Void>() {
+				public Void call() throws InterruptedException {
+					client(e.getKey(), e.getValue());
+					return null;
+				}
+			}));
+		}
+		try {
+			for (Future<?> f : futures) {
+				f.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			System.out.println("KV benchmark did not complete: " + e);
+			clients.shutdownNow();
+			return;
+		}
+		long elapsed = System.nanoTime() - start;
+		clients.shutdown();
+
+		int total = operations * stores.size();
+		System.out.println(String.format("KV benchmark: %d replicas, %d operations on %d keys, %.0f%% reads in %.2f s", stores.size(), total, keys,
+				reads * 100, elapsed / 1e9));
+		System.out.println(String.format("\tthroughput: %.1f operations/s", total / (elapsed / 1e9)));
+		print("reads", read_latencies);
+		print("writes", write_latencies);
+		for (Map.Entry<Integer, ReplicatedStore> e : stores.entrySet()) {
+			System.out.println(String.format("\treplica %d: %s", e.getKey(), e.getValue()));
+		}
+		checkReplicas();
+	}
+
+	private static void print(String what, Queue<Long> latencies) {
+		if (latencies.isEmpty()) {
+			return;
+		}
+		long[] sorted = new long[latencies.size()];
+		int i = 0;
+		for (long l : latencies) {
+			sorted[i++] = l;
+		}
+		Arrays.sort(sorted);
+		System.out.println(String.format("\t%s: %d, p50 %.2f ms, p99 %.2f ms, max %.2f ms", what, sorted.length, percentile(sorted, 0.5),
+				percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6));
+	}
+
+	/**
+	 * Sync every replica, then they all have every write
+	 */
+	private void checkReplicas() {
+		Map<String, String> first = null;
+		for (Map.Entry<Integer, ReplicatedStore> e : stores.entrySet()) {
+			try {
+				e.getValue().sync();
+			} catch (InterruptedException ex) {
+				return;
+			}
+		}
+		for (Map.Entry<Integer, ReplicatedStore> e : stores.entrySet()) {
+			Map<String, String> data = e.getValue().getData();
+			if (first == null) {
+				first = data;
+			} else if (!data.equals(first)) {
+				System.out.println(String.format("\tdata of replica %d differs", e.getKey()));
+				return;
+			}
+		}
+		System.out.println(String.format("\tdata: the same at all %d replicas", stores.size()));
+	}
+
+	/**
+	 * @return the percentile of the sorted latencies in ms
+	 */
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e6;
+	}
+}
@@ -0,0 +1,163 @@
+package ex1.testcases;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import ex1.*;
+
+/**
+ * Checks that a group of processes deliver the same messages in the same
+ * order while they deliver them. The n-th delivery of a process is compared
+ * with the n-th delivery of the first process that got that far. Only the
+ * deliveries between the slowest and the fastest process are kept, so long
+ * runs need memory for the lag, not for the run.
+ */
+public class OrderVerifier implements BatchTarget {
+	private static final int MIN_WINDOW = 1024;
+
+	/**
+	 * Process id -> its slot in counts
+	 */
+	private final Map<Integer, Integer> slots = new HashMap<>();
+	private final int[] pids;
+	/**
+	 * Number of messages every process delivered
+	 */
+	private final long[] counts;
+	/**
+	 * Number of deliveries each process has to make, 0 for no limit
+	 */
+	private final long expected;
+
+	/**
+	 * Ids of the messages at positions [base, head), position i is at
+	 * i & mask
+	 */
+	private long[] window = new long[MIN_WINDOW];
+	private int mask = MIN_WINDOW - 1;
+	/**
+	 * Position every process has delivered, and the first position no
+	 * process has delivered
+	 */
+	private long base = 0;
+	private long head = 0;
+	private long max_lag = 0;
+
+	private String failure;
+	/**
+	 * Counted down by every process that made its expected deliveries, and
+	 * all the way on a failure
+	 */
+	private final CountDownLatch done;
+
+	/**
+	 * @param expected
+	 *            number of messages every process will deliver, 0 if not
+	 *            known
+	 */
+	public OrderVerifier(Collection<Integer> processes, long expected) {
+		this.pids = new int[processes.size()];
+		this.counts = new long[processes.size()];
+		for (int pid : processes) {
+			pids[slots.size()] = pid;
+			slots.put(pid, slots.size());
+		}
+		this.expected = expected;
+		this.done = new CountDownLatch(processes.size());
+	}
+
+	@Override
+	public synchronized void deliver(int deliveringPID, Message m) {
+		delivered(slots.get(deliveringPID), m);
+	}
+
+	@Override
+	public synchronized void deliver(int deliveringPID, List<Message> ms) {
+		int slot = slots.get(deliveringPID);
+		for (Message m : ms) {
+			delivered(slot, m);
+		}
+	}
+
+	private void delivered(int slot, Message m) {
+		long pos = counts[slot]++;
+		if (failure != null) {
+			return;
+		}
+		if (pos == head) {
+			// First to get here, the others have to agree
+			if (head - base == window.length) {
+				grow();
+			}
+			window[(int) (pos & mask)] = m.getId();
+			head++;
+			max_lag = Math.max(max_lag, head - base);
+		} else {
+			long id = window[(int) (pos & mask)];
+			if (id != m.getId()) {
+				fail(String.format("Process %d delivered %s as message %d, another process delivered %s", pids[slot], m, pos,
+						new Message(Message.process(id), Message.time(id))));
+				return;
+			}
+		}
+		if (pos == base) {
+			// It could have been the slowest
+			long min = Long.MAX_VALUE;
+			for (long c : counts) {
+				min = Math.min(min, c);
+			}
+			base = min;
+		}
+		if (expected > 0 && counts[slot] == expected) {
+			done.countDown();
+		} else if (expected > 0 && counts[slot] > expected) {
+			fail(String.format("Process %d delivered more than %d messages: %s", pids[slot], expected, m));
+		}
+	}
+
+	private void grow() {
+		long[] grown = new long[2 * window.length];
+		for (long pos = base; pos < head; pos++) {
+			grown[(int) (pos & (grown.length - 1))] = window[(int) (pos & mask)];
+		}
+		window = grown;
+		mask = grown.length - 1;
+	}
+
+	private void fail(String why) {
+		failure = why;
+		while (done.getCount() > 0) {
+			done.countDown();
+		}
+	}
+
+	/**
+	 * Wait until every process made its expected deliveries or the order
+	 * was found to differ
+	 *
+	 * @return false if the time ran out
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+		return done.await(timeout, unit);
+	}
+
+	/**
+	 * @return why the order differs, or null if it did not so far
+	 */
+	public synchronized String getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return the number of messages every process delivered
+	 */
+	public synchronized long getDelivered() {
+		return base;
+	}
+
+	public synchronized String toString() {
+		return String.format("%d processes delivered %d messages in the same order, the fastest %d, window %d (max lag %d)", pids.length, base,
+				head, window.length, max_lag);
+	}
+}
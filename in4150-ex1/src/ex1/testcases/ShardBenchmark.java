@@ -0,0 +1,194 @@
+package ex1.testcases;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import ex1.*;
+import ex1.Process;
+
+/**
+ * Measures throughput and delivery latency of the local sharded nodes, like
+ * Benchmark does for single processes. Every node broadcasts a number of
+ * messages with keys spread over the groups. With merge, the deliveries of
+ * the groups are merged into one total order, which is checked to be the
+ * same at every node. All nodes have to be local.
+ */
+public class ShardBenchmark extends Thread implements Target {
+	/**
+	 * Maximum time in ms to wait for all deliveries
+	 */
+	private static final int TIMEOUT = 120000;
+	/**
+	 * Time in ms between null messages when merging
+	 */
+	private static final int TICK = 1;
+
+	private final Map<Integer, ShardedProcess> localshards;
+	private final int messages;
+	private final boolean merge;
+
+	/**
+	 * Message -> time it was broadcast. Messages of different groups can be
+	 * equal, so they are kept per group.
+	 */
+	private final List<ConcurrentMap<Message, Long>> sent = new ArrayList<>();
+	/**
+	 * Delivery latencies in ns
+	 */
+	private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+	/**
+	 * Node -> the order it delivered in, when merging
+	 */
+	private final Map<Integer, List<Message>> orders = new HashMap<>();
+	private final CountDownLatch done;
+
+	/**
+	 * @param messages
+	 *            number of messages every node broadcasts
+	 */
+	public ShardBenchmark(Map<Integer, ShardedProcess> localshards, int messages, boolean merge) {
+		this.localshards = localshards;
+		this.messages = messages;
+		this.merge = merge;
+		int n = localshards.size();
+		this.done = new CountDownLatch(n * n * messages);
+		int groups = localshards.values().iterator().next().getGroups().size();
+		for (int g = 0; g < groups; g++) {
+			sent.add(new ConcurrentHashMap<Message, Long>());
+		}
+		for (int pid : localshards.keySet()) {
+			orders.put(pid, Collections.synchronizedList(new ArrayList<Message>()));
+		}
+	}
+
+	/**
+	 * Delivery of group g without merging
+	 */
+	private Target forGroup(final int g) {
+		return new Target() {
+			@Override
+			public void deliver(int deliveringPID, Message m) {
+				delivered(sent.get(g), m);
+			}
+		};
+	}
+
+	/**
+	 * Delivery of the merged order. Equal messages of different groups were
+	 * broadcast by the same node, the first one found is taken.
+	 */
+	@Override
+	public void deliver(int deliveringPID, Message m) {
+		orders.get(deliveringPID).add(m);
+		for (ConcurrentMap<Message, Long> s : sent) {
+			if (s.containsKey(m)) {
+				delivered(s, m);
+				return;
+			}
+		}
+	}
+
+	private void delivered(ConcurrentMap<Message, Long> s, Message m) {
+		long t = System.nanoTime();
+		Long b;
+		// The broadcast can still be on its way into the map
+		while ((b = s.get(m)) == null) {
+			Thread.yield();
+		}
+		latencies.add(t - b);
+		done.countDown();
+	}
+
+	public void run() {
+		for (ShardedProcess node : localshards.values()) {
+			for (Process p : node.getGroups()) {
+				p.setRandomDelay(false);
+			}
+			if (merge) {
+				node.setMergedTarget(this, TICK);
+			} else {
+				for (int g = 0; g < node.getGroups().size(); g++) {
+					node.getGroup(g).setTarget(forGroup(g));
+				}
+			}
+		}
+		long start = System.nanoTime();
+		int key = 0;
+		boolean interrupted = false;
+		sending: for (int i = 0; i < messages; i++) {
+			for (ShardedProcess node : localshards.values()) {
+				Integer k = key++;
+				int g = node.groupOf(k);
+				long t = System.nanoTime();
+				Message m = node.getGroup(g).sendNewMessage();
+				if (m == null) {
+					// Interrupted while waiting for the window
+					interrupted = true;
+					break sending;
+				}
+				sent.get(g).put(m, t);
+			}
+		}
+		boolean completed = false;
+		try {
+			completed = !interrupted && done.await(TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+		}
+		long elapsed = System.nanoTime() - start;
+		for (ShardedProcess node : localshards.values()) {
+			for (Process p : node.getGroups()) {
+				p.setRandomDelay(true);
+			}
+		}
+		if (interrupted) {
+			System.out.println("Shard benchmark interrupted");
+			return;
+		}
+		if (!completed) {
+			System.out.println("Shard benchmark did not complete, " + done.getCount() + " deliveries missing");
+			return;
+		}
+
+		long[] sorted = new long[latencies.size()];
+		int i = 0;
+		long total = 0;
+		for (long l : latencies) {
+			sorted[i++] = l;
+			total += l;
+		}
+		Arrays.sort(sorted);
+		int broadcasts = messages * localshards.size();
+		int groups = sent.size();
+		System.out.println(String.format("Shard benchmark: %d nodes in %d groups, %d broadcasts in %.2f s%s", localshards.size(), groups,
+				broadcasts, elapsed / 1e9, merge ? ", merged" : ""));
+		System.out.println(String.format("\tthroughput: %.1f broadcasts/s", broadcasts / (elapsed / 1e9)));
+		System.out.println(String.format("\tlatency: avg %.2f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms", total / 1e6 / sorted.length,
+				percentile(sorted, 0.5), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6));
+		if (merge) {
+			checkOrders();
+		}
+	}
+
+	/**
+	 * Check that every node delivered the merged order in the same order
+	 */
+	private void checkOrders() {
+		Iterator<Map.Entry<Integer, List<Message>>> it = orders.entrySet().iterator();
+		Map.Entry<Integer, List<Message>> first = it.next();
+		while (it.hasNext()) {
+			Map.Entry<Integer, List<Message>> e = it.next();
+			if (!e.getValue().equals(first.getValue())) {
+				System.out.println(String.format("\tmerged order of node %d differs from node %d", e.getKey(), first.getKey()));
+				return;
+			}
+		}
+		System.out.println(String.format("\tmerged order: the same at all %d nodes", orders.size()));
+	}
+
+	/**
+	 * @return the percentile of the sorted latencies in ms
+	 */
+	private static double percentile(long[] sorted, double p) {
+		return sorted[(int) Math.min(sorted.length - 1, Math.floor(p * sorted.length))] / 1e6;
+	}
+}
@@ -1,90 +1,128 @@
-package ex1.testcases;
-
-import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import ex1.*;
-import ex1.Process;
-
-public class TestCase1 extends Thread implements Target {
-
-	private AtomicBoolean change = new AtomicBoolean(false);
-	
-	private final Map<Integer, Process> localprocessmap;
-	
-	private Map<Integer, Deque<Message>> messagestack = new HashMap<>();
-	
-	public TestCase1(Map<Integer, Process> localprocessmap) {
-		this.localprocessmap = localprocessmap;
-		for(Process p : localprocessmap.values()) {
-			messagestack.put(p.process_id, new ArrayDeque<Message>());
-		}
-	}
-
-	@Override
-	public synchronized void deliver(int deliveringPID, Message m) {
-		messagestack.get(deliveringPID).push(m);
-		change.set(true);
-	}
-	
-	public void run() {
-		if(localprocessmap.size() < 3) {
-			System.err.println("Test1 requires 3 processes");
-			return;
-		}
-		// Send a message a first and second process at "the same time"
-		Process p0 = localprocessmap.get(0);
-		Process p1 = localprocessmap.get(1);
-		Process p2 = localprocessmap.get(2);
-		p0.sendNewMessage();
-		p1.sendNewMessage();
-		p2.sendNewMessage();
-		try {
-			Thread.sleep(1500);
-		} catch (InterruptedException e) {}
-		p2.sendNewMessage();
-		try {
-			Thread.sleep(3000);
-		} catch (InterruptedException e) {}
-		p0.sendNewMessage();
-		
-		// Wait for both messages to be delivered
-		boolean completed = false;
-		while(!completed) {
-			while(change.get() == false) {}
-			if(messagestack.get(0).size() >= 5 &&
-					messagestack.get(1).size() >= 5 &&
-					messagestack.get(2).size() >= 5) {
-				completed = true;
-			} else {
-				change.set(false);
-			}
-		}
-		while(change.get()==false) {
-			for(Process p: localprocessmap.values()) {
-				if(messagestack.get(p.process_id).size() < 5) {
-					change.set(false);
-					break;
-				}
-			}
-		}
-		
-		// Check that all process queues are the same
-		Deque<?> q = messagestack.get(0);
-		boolean success = true;
-		for(int i=0;i<3;i++) {
-			success = success && messagestack.get(i).toString().equals(q.toString());
-			if(!success) {
-				System.out.println("Delivery queue of p" + i + " is different: " + messagestack.get(i) + " v.s. " + q);
-			}
-		}
-		if(!success) {
-			System.out.println("Testcase1 failed, not all messages were received in the same order by all processes");
-		} else {
-			System.out.println("Delivery order: " + q.toString());
-		}
-
-		System.out.println("TestCase 1 completed " + (success?"succesfully":"unsuccessfully"));
-	}
-
-}
+package ex1.testcases;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import ex1.*;
+import ex1.Process;
+
+/**
+ * Broadcasts messages from the local processes, and an OrderVerifier checks
+ * that all of them deliver the messages in the same order. By default the
+ * first three processes broadcast at the same time, the third again after
+ * 1.5 s and the first after 3 s, with the random delays on so the messages
+ * cross each other. The soak test has every process broadcast a number of
+ * messages without the delays, it can run for millions of messages. All
+ * processes of the group have to be local.
+ */
+public class TestCase1 extends Thread {
+	/**
+	 * Time in ms between progress reports
+	 */
+	private static final int PROGRESS = 10000;
+
+	/**
+	 * Number of messages broadcast by the default test
+	 */
+	private static final int SCENARIO_MESSAGES = 5;
+
+	private final Map<Integer, Process> localprocessmap;
+	private final boolean soak;
+	private final int messages;
+	private final OrderVerifier verifier;
+
+	/**
+	 * The default test, needs at least three processes
+	 */
+	public TestCase1(Map<Integer, Process> localprocessmap) {
+		this(localprocessmap, false, 0, SCENARIO_MESSAGES);
+	}
+
+	/**
+	 * The soak test
+	 *
+	 * @param messages
+	 *            number of messages every process broadcasts
+	 */
+	public TestCase1(Map<Integer, Process> localprocessmap, int messages) {
+		this(localprocessmap, true, messages, (long) messages * localprocessmap.size());
+	}
+
+	private TestCase1(Map<Integer, Process> localprocessmap, boolean soak, int messages, long expected) {
+		// Processes can join meanwhile
+		this.localprocessmap = new TreeMap<>(localprocessmap);
+		this.soak = soak;
+		this.messages = messages;
+		this.verifier = new OrderVerifier(localprocessmap.keySet(), expected);
+	}
+
+	public Target getTarget() {
+		return verifier;
+	}
+
+	public void run() {
+		if (!soak && localprocessmap.size() < 3) {
+			System.err.println("Test1 requires 3 processes");
+			return;
+		}
+		long start = System.nanoTime();
+		try {
+			if (soak) {
+				soak();
+			} else {
+				scenario();
+			}
+			while (!verifier.await(PROGRESS, TimeUnit.MILLISECONDS)) {
+				System.out.println("TestCase 1: " + verifier.toString());
+			}
+		} catch (InterruptedException e) {
+			return;
+		} finally {
+			for (Process p : localprocessmap.values()) {
+				p.setRandomDelay(true);
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		String failure = verifier.getFailure();
+		if (failure != null) {
+			System.out.println("Testcase1 failed, not all messages were received in the same order by all processes");
+			System.out.println("\t" + failure);
+		} else {
+			System.out.println(String.format("TestCase 1: %s in %.2f s (%.0f/s)", verifier.toString(), seconds, verifier.getDelivered() / seconds));
+		}
+		System.out.println("TestCase 1 completed " + (failure == null ? "succesfully" : "unsuccessfully"));
+	}
+
+	/**
+	 * The first three processes broadcast at "the same time", the third
+	 * again after 1.5 s and the first after another 3 s
+	 */
+	private void scenario() throws InterruptedException {
+		Iterator<Process> i = localprocessmap.values().iterator();
+		Process p0 = i.next();
+		Process p1 = i.next();
+		Process p2 = i.next();
+		p0.sendNewMessage();
+		p1.sendNewMessage();
+		p2.sendNewMessage();
+		Thread.sleep(1500);
+		p2.sendNewMessage();
+		Thread.sleep(3000);
+		p0.sendNewMessage();
+	}
+
+	/**
+	 * Every process broadcasts messages as fast as it can, without the
+	 * random delays
+	 */
+	private void soak() {
+		for (Process p : localprocessmap.values()) {
+			p.setRandomDelay(false);
+		}
+		for (int i = 0; i < messages; i++) {
+			for (Process p : localprocessmap.values()) {
+				p.sendNewMessage();
+			}
+		}
+	}
+}
@@ -0,0 +1,397 @@
+package ex2;
+
+import java.util.*;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Request sets (quorums) for processes 1..n. Every two request sets
+ * intersect and every process is in its own set.
+ *
+ * When n = q^2+q+1 for a prime power q the sets are the lines of the
+ * projective plane of order q, which have q+1 processes, about sqrt(n), and
+ * every process is in q+1 of them. For other n the processes are put in a
+ * grid of about sqrt(n) by sqrt(n), the set of a process is its row and its
+ * column, about 2*sqrt(n) processes.
+ */
+public class RequestSets {
+	public enum CONSTRUCTION {
+		/**
+		 * The hand made sets of the assignment, the tests use them
+		 */
+		FIXED,
+		PROJECTIVE_PLANE,
+		GRID
+	}
+
+	/**
+	 * n -> (proc_i -> {a,b,c}), kept for n=3 and n=7 so test2 and test3 still
+	 * do what they say
+	 */
+	private static final Map<Integer, Map<Integer, Collection<Integer>>> fixed = ImmutableMap.<Integer, Map<Integer, Collection<Integer>>>builder()
+		.put(3, ImmutableMap.<Integer, Collection<Integer>>builder()
+				.put(1, ImmutableList.of(1, 2))
+				.put(2, ImmutableList.of(2, 3))
+				.put(3, ImmutableList.of(1, 3))
+				.build())
+		.put(7, ImmutableMap.<Integer, Collection<Integer>>builder()
+				.put(1, ImmutableList.of(1, 2, 3))
+				.put(2, ImmutableList.of(2, 4, 6))
+				.put(3, ImmutableList.of(3, 5, 6))
+				.put(4, ImmutableList.of(1, 4, 5))
+				.put(5, ImmutableList.of(2, 5, 7))
+				.put(6, ImmutableList.of(1, 6, 7))
+				.put(7, ImmutableList.of(3, 4, 7))
+				.build()
+	).build();
+
+	public final int n;
+	public final CONSTRUCTION construction;
+	/**
+	 * proc_i -> request set of proc_i, sorted
+	 */
+	public final Map<Integer, Collection<Integer>> sets;
+
+	private RequestSets(int n, CONSTRUCTION construction, Map<Integer, Collection<Integer>> sets) {
+		this.n = n;
+		this.construction = construction;
+		this.sets = sets;
+	}
+
+	/**
+	 * Make and validate the request sets for processes 1..n
+	 */
+	public static RequestSets create(int n) {
+		if(n < 1) {
+			throw new IllegalArgumentException("Need at least one process, not " + n);
+		}
+		RequestSets r;
+		int q = order(n);
+		if(fixed.containsKey(n)) {
+			r = new RequestSets(n, CONSTRUCTION.FIXED, fixed.get(n));
+		} else if(q > 0) {
+			r = new RequestSets(n, CONSTRUCTION.PROJECTIVE_PLANE, projectivePlane(q));
+		} else {
+			r = new RequestSets(n, CONSTRUCTION.GRID, grid(n));
+		}
+		r.validate();
+		return r;
+	}
+
+	/**
+	 * @return q if n = q^2+q+1 for a prime power q, otherwise 0
+	 */
+	private static int order(int n) {
+		for(int q = 2; q * q + q + 1 <= n; q++) {
+			if(q * q + q + 1 == n && prime(q) > 0) {
+				return q;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return p if q = p^k for a prime p, otherwise 0
+	 */
+	private static int prime(int q) {
+		int p = 2;
+		while(q % p != 0) {
+			p++;
+		}
+		while(q % p == 0) {
+			q /= p;
+		}
+		return q == 1 ? p : 0;
+	}
+
+	/**
+	 * The lines of the projective plane over GF(q). Points and lines are
+	 * the vectors (1,a,b), (0,1,a) and (0,0,1), a point is on a line if
+	 * their dot product is 0. Every process is a point and gets a line
+	 * through it, every line once.
+	 */
+	private static Map<Integer, Collection<Integer>> projectivePlane(int q) {
+		Field f = new Field(q);
+		List<int[]> points = new ArrayList<>();
+		for(int a = 0; a < q; a++) {
+			for(int b = 0; b < q; b++) {
+				points.add(new int[] {1, a, b});
+			}
+		}
+		for(int a = 0; a < q; a++) {
+			points.add(new int[] {0, 1, a});
+		}
+		points.add(new int[] {0, 0, 1});
+
+		int n = points.size();
+		// line -> its points, the lines are the same vectors
+		List<List<Integer>> lines = new ArrayList<>();
+		// point -> the lines through it
+		List<List<Integer>> through = new ArrayList<>();
+		for(int i = 0; i < n; i++) {
+			through.add(new ArrayList<Integer>());
+		}
+		for(int l = 0; l < n; l++) {
+			List<Integer> line = new ArrayList<>();
+			for(int p = 0; p < n; p++) {
+				if(f.dot(points.get(l), points.get(p)) == 0) {
+					line.add(p);
+					through.get(p).add(l);
+				}
+			}
+			lines.add(line);
+		}
+
+		// Every point is on q+1 lines and every line has q+1 points, so
+		// there is a matching of points to lines through them
+		int[] line_of = new int[n];
+		int[] point_of = new int[n];
+		Arrays.fill(line_of, -1);
+		Arrays.fill(point_of, -1);
+		for(int p = 0; p < n; p++) {
+			if(!match(p, through, line_of, point_of, new boolean[n])) {
+				throw new IllegalStateException("No line left for point " + p);
+			}
+		}
+
+		Map<Integer, Collection<Integer>> sets = new HashMap<>();
+		for(int p = 0; p < n; p++) {
+			ImmutableList.Builder<Integer> set = ImmutableList.builder();
+			for(int member : lines.get(line_of[p])) {
+				set.add(member + 1);
+			}
+			sets.put(p + 1, set.build());
+		}
+		return sets;
+	}
+
+	/**
+	 * Find a line for point p, moving the points on the way to another
+	 * line if needed
+	 * @return whether p got a line
+	 */
+	private static boolean match(int p, List<List<Integer>> through, int[] line_of, int[] point_of, boolean[] visited) {
+		for(int l : through.get(p)) {
+			if(visited[l]) {
+				continue;
+			}
+			visited[l] = true;
+			if(point_of[l] < 0 || match(point_of[l], through, line_of, point_of, visited)) {
+				point_of[l] = p;
+				line_of[p] = l;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Put the processes row by row in a grid with ceil(sqrt(n)) columns, the
+	 * set of a process is its row and its column. The last row can be
+	 * short: two processes in different rows always share the process in
+	 * the row of one and the column of the other that is not in the last
+	 * row.
+	 */
+	private static Map<Integer, Collection<Integer>> grid(int n) {
+		int columns = (int) Math.ceil(Math.sqrt(n));
+		Map<Integer, Collection<Integer>> sets = new HashMap<>();
+		for(int p = 0; p < n; p++) {
+			int row = p / columns;
+			int column = p % columns;
+			SortedSet<Integer> set = new TreeSet<>();
+			for(int c = 0; c < columns && row * columns + c < n; c++) {
+				set.add(row * columns + c + 1);
+			}
+			for(int r = 0; r * columns + column < n; r++) {
+				set.add(r * columns + column + 1);
+			}
+			sets.put(p + 1, ImmutableList.copyOf(set));
+		}
+		return sets;
+	}
+
+	/**
+	 * Check that every process has a set with itself in it, of processes
+	 * 1..n, and that every two sets intersect
+	 * @throws IllegalStateException if not
+	 */
+	private void validate() {
+		List<BitSet> bits = new ArrayList<>();
+		for(int i = 1; i <= n; i++) {
+			Collection<Integer> set = sets.get(i);
+			if(set == null || !set.contains(i)) {
+				throw new IllegalStateException(String.format("Request set of process %d is %s, it has to contain the process", i, set));
+			}
+			BitSet b = new BitSet(n + 1);
+			for(int member : set) {
+				if(member < 1 || member > n) {
+					throw new IllegalStateException(String.format("Request set of process %d has unknown process %d", i, member));
+				}
+				b.set(member);
+			}
+			bits.add(b);
+		}
+		for(int i = 0; i < n; i++) {
+			for(int j = i + 1; j < n; j++) {
+				if(!bits.get(i).intersects(bits.get(j))) {
+					throw new IllegalStateException(String.format("Request sets of process %d and %d don't intersect", i + 1, j + 1));
+				}
+			}
+		}
+	}
+
+	public int maxSize() {
+		int max = 0;
+		for(Collection<Integer> set : sets.values()) {
+			max = Math.max(max, set.size());
+		}
+		return max;
+	}
+
+	public double averageSize() {
+		long total = 0;
+		for(Collection<Integer> set : sets.values()) {
+			total += set.size();
+		}
+		return (double) total / n;
+	}
+
+	/**
+	 * @return the highest number of request sets a process is in, it gets
+	 *         that many of the requests
+	 */
+	public int maxLoad() {
+		int[] load = new int[n + 1];
+		for(Collection<Integer> set : sets.values()) {
+			for(int member : set) {
+				load[member]++;
+			}
+		}
+		int max = 0;
+		for(int l : load) {
+			max = Math.max(max, l);
+		}
+		return max;
+	}
+
+	public Collection<Integer> get(int proc_i) {
+		return sets.get(proc_i);
+	}
+
+	public String toString() {
+		return String.format("n=%d %s: request sets of at most %d processes, %.1f on average (sqrt(n)=%.1f), a process is in at most %d sets",
+				n, construction.toString().toLowerCase().replace('_', ' '), maxSize(), averageSize(), Math.sqrt(n), maxLoad());
+	}
+
+	/**
+	 * GF(q) for a prime power q = p^k. Elements are polynomials over GF(p)
+	 * of degree below k, the digits of the element in base p are its
+	 * coefficients.
+	 */
+	private static class Field {
+		final int q;
+		final int[][] add;
+		final int[][] mul;
+
+		Field(int q) {
+			this.q = q;
+			int p = prime(q);
+			int k = 0;
+			for(int i = 1; i < q; i *= p) {
+				k++;
+			}
+			add = new int[q][q];
+			for(int a = 0; a < q; a++) {
+				for(int b = 0; b < q; b++) {
+					add[a][b] = fromDigits(addDigits(digits(a, p, k), digits(b, p, k), p), p);
+				}
+			}
+			// Try the monic polynomials of degree k until one gives a field
+			for(int f = 0; f < q; f++) {
+				int[][] m = multiplication(digits(f, p, k), p, k);
+				if(m != null) {
+					mul = m;
+					return;
+				}
+			}
+			throw new IllegalStateException("No irreducible polynomial of degree " + k + " over GF(" + p + ")");
+		}
+
+		/**
+		 * The multiplication table modulo x^k + f, or null if it has zero
+		 * divisors and f is not irreducible
+		 */
+		private int[][] multiplication(int[] f, int p, int k) {
+			int[][] m = new int[q][q];
+			for(int a = 0; a < q; a++) {
+				for(int b = 0; b < q; b++) {
+					int[] product = new int[k];
+					int[] power = digits(a, p, k);
+					int[] bd = digits(b, p, k);
+					for(int i = 0; i < k; i++) {
+						for(int j = 0; j < bd[i]; j++) {
+							product = addDigits(product, power, p);
+						}
+						power = timesX(power, f, p);
+					}
+					m[a][b] = fromDigits(product, p);
+					if(a != 0 && b != 0 && m[a][b] == 0) {
+						return null;
+					}
+				}
+			}
+			return m;
+		}
+
+		/**
+		 * a * x modulo x^k + f
+		 */
+		private static int[] timesX(int[] a, int[] f, int p) {
+			int k = a.length;
+			int top = a[k - 1];
+			int[] r = new int[k];
+			for(int i = k - 1; i > 0; i--) {
+				r[i] = a[i - 1];
+			}
+			// x^k = -f
+			for(int i = 0; i < k; i++) {
+				r[i] = ((r[i] - top * f[i]) % p + p) % p;
+			}
+			return r;
+		}
+
+		private static int[] digits(int a, int p, int k) {
+			int[] d = new int[k];
+			for(int i = 0; i < k; i++) {
+				d[i] = a % p;
+				a /= p;
+			}
+			return d;
+		}
+
+		private static int fromDigits(int[] d, int p) {
+			int a = 0;
+			for(int i = d.length - 1; i >= 0; i--) {
+				a = a * p + d[i];
+			}
+			return a;
+		}
+
+		private static int[] addDigits(int[] a, int[] b, int p) {
+			int[] r = new int[a.length];
+			for(int i = 0; i < a.length; i++) {
+				r[i] = (a[i] + b[i]) % p;
+			}
+			return r;
+		}
+
+		int dot(int[] u, int[] v) {
+			int s = 0;
+			for(int i = 0; i < u.length; i++) {
+				s = add[s][mul[u[i]][v[i]]];
+			}
+			return s;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package ex2;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+public class RequestSetsTest {
+	private static final int MAX_N = 500;
+
+	/**
+	 * Every process is in its own set, and only has processes 1..n in it
+	 */
+	@Test
+	public void testSelfMembership() {
+		for(int n = 1; n <= MAX_N; n++) {
+			RequestSets r = RequestSets.create(n);
+			for(int i = 1; i <= n; i++) {
+				Collection<Integer> set = r.get(i);
+				assertNotNull("n=" + n + ": no request set for process " + i, set);
+				assertTrue("n=" + n + ": process " + i + " is not in its request set " + set, set.contains(i));
+				for(int member : set) {
+					assertTrue("n=" + n + ": request set of process " + i + " has unknown process " + member, member >= 1 && member <= n);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Every two request sets have a process in common
+	 */
+	@Test
+	public void testPairwiseIntersection() {
+		for(int n = 1; n <= MAX_N; n++) {
+			RequestSets r = RequestSets.create(n);
+			List<BitSet> bits = new ArrayList<>();
+			for(int i = 1; i <= n; i++) {
+				BitSet b = new BitSet(n + 1);
+				for(int member : r.get(i)) {
+					b.set(member);
+				}
+				bits.add(b);
+			}
+			for(int i = 0; i < n; i++) {
+				for(int j = i + 1; j < n; j++) {
+					// Not assertTrue, the message would be formatted for every pair
+					if(!bits.get(i).intersects(bits.get(j))) {
+						fail(String.format("n=%d: request sets of process %d and %d don't intersect", n, i + 1, j + 1));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * For n = q^2+q+1 with q a prime power the sets are the lines of the
+	 * projective plane, of q+1 processes each
+	 */
+	@Test
+	public void testProjectivePlaneSizes() {
+		int[][] orders = { {13, 3}, {57, 7}, {73, 8}, {91, 9} };
+		for(int[] o : orders) {
+			int n = o[0];
+			int q = o[1];
+			RequestSets r = RequestSets.create(n);
+			assertEquals("n=" + n, RequestSets.CONSTRUCTION.PROJECTIVE_PLANE, r.construction);
+			for(int i = 1; i <= n; i++) {
+				assertEquals("n=" + n + ": size of the request set of process " + i, q + 1, r.get(i).size());
+			}
+			// Every process is on q+1 lines too
+			assertEquals("n=" + n, q + 1, r.maxLoad());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoProcesses() {
+		RequestSets.create(0);
+	}
+}